@@ -0,0 +1,307 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times Gitlet commands, each run in the JVM as Main would run
+ * it, on a repository with FILES files and COMMITS commits on
+ * master. Branch other forks from master half way and adds files
+ * of its own, so it merges without conflicts. Commands work on
+ * the current directory, so the benchmarks must be run in a
+ * scratch directory marked by a file named MARKER (bench/Makefile
+ * makes one); everything else in it is deleted. Output is
+ * discarded.
+ * @author Adish Jain
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandsBenchmark {
+
+    /** File marking a directory the benchmarks may clear. */
+    static final String MARKER = ".gitlet-bench";
+
+    /** Number of files tracked on master. */
+    @Param({"100"})
+    public int files;
+
+    /** Number of commits on master. */
+    @Param({"200"})
+    public int commits;
+
+    /**
+     * Builds the repository in the current directory.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        File cwd = new File(".");
+        if (!new File(cwd, MARKER).isFile()) {
+            throw new IllegalStateException("run in a directory holding "
+                    + MARKER);
+        }
+        _stdout = System.out;
+        System.setOut(NULL_OUT);
+        clear(cwd);
+        run("init");
+        for (int i = 0; i < files; i += 1) {
+            write("f" + i, "version 0 of f" + i);
+            run("add", "f" + i);
+        }
+        run("commit", "commit 0");
+        for (int c = 1; c < commits; c += 1) {
+            if (c == commits / 2) {
+                run("branch", "other");
+            }
+            String name = "f" + (c % files);
+            write(name, "version " + c + " of " + name);
+            run("add", name);
+            run("commit", "commit " + c);
+        }
+        _previous = headID();
+        write("f0", "last version of f0");
+        run("add", "f0");
+        run("commit", "last commit");
+        _tip = headID();
+        run("checkout", "other");
+        for (int c = 0; c < 10; c += 1) {
+            write("o" + c, "file o" + c + " of other");
+            run("add", "o" + c);
+            run("commit", "other " + c);
+        }
+        run("checkout", "master");
+    }
+
+    /**
+     * Restores standard output.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(_stdout);
+    }
+
+    /**
+     * log of all of master.
+     */
+    @Benchmark
+    public void log() {
+        run("log");
+    }
+
+    /**
+     * global-log.
+     */
+    @Benchmark
+    public void globalLog() {
+        run("global-log");
+    }
+
+    /**
+     * find by exact message.
+     */
+    @Benchmark
+    public void find() {
+        run("find", "commit 42");
+    }
+
+    /**
+     * status of a clean working directory.
+     */
+    @Benchmark
+    public void status() {
+        run("status");
+    }
+
+    /**
+     * checkout of the other branch and back.
+     */
+    @Benchmark
+    public void checkout() {
+        run("checkout", "other");
+        run("checkout", "master");
+    }
+
+    /**
+     * reset of master one commit back and forward again.
+     */
+    @Benchmark
+    public void reset() {
+        run("reset", _previous);
+        run("reset", _tip);
+    }
+
+    /**
+     * Merge base of master and other, alone.
+     * @return Commit
+     */
+    @Benchmark
+    public Commit findSplitPoint() {
+        return new Commands(new String[] {"merge", "other"})
+                .findSplitPoint(new String[] {"other"});
+    }
+
+    /**
+     * add of a changed file.
+     * @param edit the change
+     */
+    @Benchmark
+    public void add(Edit edit) {
+        run("add", edit._name);
+    }
+
+    /**
+     * commit of one staged change.
+     * @param staged the change
+     */
+    @Benchmark
+    public void commit(Staged staged) {
+        run("commit", "benchmark commit");
+    }
+
+    /**
+     * merge of other into master, which is first put back
+     * where it was before the last merge.
+     * @param premerge puts master back
+     */
+    @Benchmark
+    public void merge(Premerge premerge) {
+        run("merge", "other");
+    }
+
+    /** A file changed before each invocation. */
+    @State(Scope.Thread)
+    public static class Edit {
+        /**
+         * Changes the file.
+         */
+        @Setup(Level.Invocation)
+        public void edit() {
+            _count += 1;
+            write(_name, "edit " + _count);
+        }
+
+        /** Name of the file changed. */
+        private String _name = "f1";
+
+        /** Number of changes made. */
+        private int _count;
+    }
+
+    /** A change staged before each invocation. */
+    @State(Scope.Thread)
+    public static class Staged {
+        /**
+         * Changes a file and stages it.
+         * @param edit makes the change
+         */
+        @Setup(Level.Invocation)
+        public void stage(Edit edit) {
+            edit.edit();
+            run("add", edit._name);
+        }
+    }
+
+    /** Master put back before each merge. */
+    @State(Scope.Thread)
+    public static class Premerge {
+        /**
+         * Resets master to its tip before any merge.
+         * @param repo the repository
+         */
+        @Setup(Level.Invocation)
+        public void rewind(CommandsBenchmark repo) {
+            run("reset", repo._tip);
+        }
+    }
+
+    /**
+     * Runs the Gitlet command ARGS, discarding its output.
+     * @param args String[]
+     */
+    static void run(String... args) {
+        new Commands(args) {
+            @Override
+            PrintStream openOutput() {
+                return NULL_OUT;
+            }
+        }.doCommand();
+    }
+
+    /**
+     * Returns the id of the head commit.
+     * @return String
+     */
+    static String headID() {
+        Repository repo = new Repository(new File(".gitlet"));
+        return repo.headID();
+    }
+
+    /**
+     * Replaces the contents of file NAME with TEXT.
+     * @param name String
+     * @param text String
+     */
+    static void write(String name, String text) {
+        Utils.writeContents(new File(name),
+                text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deletes everything in DIR but MARKER.
+     * @param dir File
+     */
+    static void clear(File dir) {
+        for (File f : dir.listFiles()) {
+            if (!f.getName().equals(MARKER)) {
+                delete(f);
+            }
+        }
+    }
+
+    /**
+     * Deletes FILE, and if it is a directory, everything
+     * in it.
+     * @param file File
+     */
+    static void delete(File file) {
+        if (file.isDirectory()) {
+            for (File f : file.listFiles()) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
+    /** Output stream that discards everything. */
+    static final PrintStream NULL_OUT =
+            new PrintStream(OutputStream.nullOutputStream());
+
+    /** Standard output, while it is replaced. */
+    private PrintStream _stdout;
+
+    /** Id of master's tip. */
+    private String _tip;
+
+    /** Id of the commit before master's tip. */
+    private String _previous;
+}
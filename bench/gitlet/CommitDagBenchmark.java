@@ -0,0 +1,229 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares ancestry queries on CommitDag with the walks over
+ * HashSets of hex ids that merge used before. The history is a
+ * main line of SIZE commits with a side branch merged back every
+ * MERGE_EVERY commits, and a last side branch forked half way.
+ * @author Adish Jain
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitDagBenchmark {
+
+    /** Commits between merges on the main line. */
+    static final int MERGE_EVERY = 10;
+
+    /** Number of commits on the main line. */
+    @Param({"10000", "100000"})
+    public int size;
+
+    /**
+     * Builds the history, its commit graph and the DAG.
+     * @throws IOException if the graph cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        LocalDateTime time = LocalDateTime.of(2020, 1, 1, 0, 0);
+        List<Commit> all = new ArrayList<>();
+        Commit main = add(all, "initial", time, "", "");
+        Commit side = main;
+        Commit fork = null;
+        for (int i = 1; i < size; i += 1) {
+            time = time.plusSeconds(60);
+            if (i % MERGE_EVERY == 0) {
+                main = add(all, "merge " + i, time, main.getID(),
+                        side.getID());
+                side = main;
+            } else if (i % 2 == 0) {
+                side = add(all, "side " + i, time, side.getID(), "");
+            } else {
+                main = add(all, "main " + i, time, main.getID(), "");
+            }
+            if (i == size / 2) {
+                fork = main;
+            }
+        }
+        Commit given = add(all, "given", time.plusSeconds(60),
+                fork.getID(), "");
+        _byID = new HashMap<>();
+        for (Commit c : all) {
+            _byID.put(c.getID(), c);
+        }
+        File file = File.createTempFile("commit-graph", ".bench");
+        file.deleteOnExit();
+        CommitGraph.rebuild(file, all);
+        _graph = new CommitGraph(file);
+        _dag = new CommitDag(_graph);
+        _head = main;
+        _given = given;
+        _headPos = _graph.position(main.getID());
+        _givenPos = _graph.position(given.getID());
+        _forkPos = _graph.position(fork.getID());
+        _marks = new BitSet(_graph.size());
+    }
+
+    /**
+     * Merge base by intersecting HashSets of first-parent
+     * ancestors, taking the latest.
+     * @return String
+     */
+    @Benchmark
+    public String mergeBaseHashSet() {
+        HashSet<String> both = ancestors(_head);
+        both.retainAll(ancestors(_given));
+        Commit best = null;
+        for (String id : both) {
+            Commit c = _byID.get(id);
+            if (best == null || best.getTimeStamp().isBefore(
+                    c.getTimeStamp())) {
+                best = c;
+            }
+        }
+        return best.getID();
+    }
+
+    /**
+     * Merge base on the DAG.
+     * @return int
+     */
+    @Benchmark
+    public int mergeBaseDag() {
+        return _dag.mergeBase(_headPos, _givenPos);
+    }
+
+    /**
+     * Ancestry test by building the HashSet of ancestors.
+     * @return boolean
+     */
+    @Benchmark
+    public boolean isAncestorHashSet() {
+        return ancestors(_head).contains(_graph.id(_forkPos));
+    }
+
+    /**
+     * Ancestry test on the DAG.
+     * @return boolean
+     */
+    @Benchmark
+    public boolean isAncestorDag() {
+        return _dag.isAncestor(_forkPos, _headPos);
+    }
+
+    /**
+     * All commits reachable from the head, through both
+     * parents, in a HashSet of ids.
+     * @return int
+     */
+    @Benchmark
+    public int reachableHashSet() {
+        HashSet<String> seen = new HashSet<>();
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(_head.getID());
+        while (!work.isEmpty()) {
+            String id = work.pop();
+            if (id.isEmpty() || !seen.add(id)) {
+                continue;
+            }
+            Commit c = _byID.get(id);
+            work.push(c.getParent());
+            if (c.getParent2() != null) {
+                work.push(c.getParent2());
+            }
+        }
+        return seen.size();
+    }
+
+    /**
+     * All commits reachable from the head, marked on the
+     * DAG.
+     * @return int
+     */
+    @Benchmark
+    public int reachableDag() {
+        _marks.clear();
+        _dag.markReachable(_headPos, _marks);
+        return _marks.cardinality();
+    }
+
+    /**
+     * Returns the ids of COMM and its first-parent
+     * ancestors.
+     * @param comm Commit
+     * @return HashSet
+     */
+    private HashSet<String> ancestors(Commit comm) {
+        HashSet<String> result = new HashSet<>();
+        for (Commit c = comm; c != null; c = _byID.get(c.getParent())) {
+            result.add(c.getID());
+        }
+        return result;
+    }
+
+    /**
+     * Makes a commit and adds it to ALL.
+     * @param all List
+     * @param message String
+     * @param time LocalDateTime
+     * @param parent String
+     * @param parent2 String
+     * @return Commit
+     */
+    private static Commit add(List<Commit> all, String message,
+                              LocalDateTime time, String parent,
+                              String parent2) {
+        Commit c = new Commit(message, time, parent, parent2,
+                new HashMap<>());
+        all.add(c);
+        return c;
+    }
+
+    /** Commits by id. */
+    private HashMap<String, Commit> _byID;
+
+    /** Graph of all commits. */
+    private CommitGraph _graph;
+
+    /** DAG over the graph. */
+    private CommitDag _dag;
+
+    /** Tip of the main line. */
+    private Commit _head;
+
+    /** Tip of the last side branch. */
+    private Commit _given;
+
+    /** Positions of the head, the given tip and their fork. */
+    private int _headPos, _givenPos, _forkPos;
+
+    /** Marks reused by reachableDag. */
+    private BitSet _marks;
+}
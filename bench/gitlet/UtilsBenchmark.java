@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times Utils.sha1 and Utils.serialize, which every object
+ * written goes through, on a blob of SIZE bytes and on a commit
+ * tracking FILES files.
+ * @author Adish Jain
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+
+    /** Size in bytes of the blob's contents. */
+    @Param({"4096", "1048576"})
+    public int size;
+
+    /** Number of files the commit tracks. */
+    @Param({"1000"})
+    public int files;
+
+    /**
+     * Makes the blob and the commit.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        _blob = new Blob("file", content);
+        _blobBytes = Utils.serialize(_blob);
+        HashMap<String, String> blobs = new HashMap<>();
+        for (int i = 0; i < files; i += 1) {
+            blobs.put("dir/file" + i, Utils.sha1("blob " + i));
+        }
+        _commit = new Commit("benchmark", LocalDateTime.of(2020, 1, 1, 0, 0),
+                Utils.sha1("parent"), "", blobs);
+    }
+
+    /**
+     * Hashes the serialized blob.
+     * @return String
+     */
+    @Benchmark
+    public String sha1Blob() {
+        return Utils.sha1(_blobBytes);
+    }
+
+    /**
+     * Serializes the blob.
+     * @return byte[]
+     */
+    @Benchmark
+    public byte[] serializeBlob() {
+        return Utils.serialize(_blob);
+    }
+
+    /**
+     * Serializes the commit.
+     * @return byte[]
+     */
+    @Benchmark
+    public byte[] serializeCommit() {
+        return Utils.serialize(_commit);
+    }
+
+    /**
+     * Serializes the commit and hashes the result, as
+     * when the commit is made.
+     * @return String
+     */
+    @Benchmark
+    public String sha1Commit() {
+        return Utils.sha1(Utils.serialize(_commit));
+    }
+
+    /** The blob. */
+    private Blob _blob;
+
+    /** The blob, serialized. */
+    private byte[] _blobBytes;
+
+    /** The commit. */
+    private Commit _commit;
+}
@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds, for each line of a file, the commit that last changed
+ * it. Walks the first-parent history of the file through the
+ * commit graph, skipping commits whose changed-path filter rules
+ * the file out. At each commit that did change the file, the new
+ * version is diffed against the parent's; lines the commit added
+ * are attributed to it, and the rest are carried back to their
+ * positions in the parent's version. The walk stops as soon as
+ * every line is attributed.
+ * @author Adish Jain
+ */
+class Blame {
+
+    /**
+     * Constructor.
+     * @param graph the commit graph
+     * @param commits reads commits
+     * @param blobs reads blob contents
+     */
+    Blame(CommitGraph graph, CommitWalk.Loader commits,
+          Merge.Source blobs) {
+        _graph = graph;
+        _commits = commits;
+        _blobs = blobs;
+    }
+
+    /**
+     * Returns, for each of LINES, the graph position of the
+     * commit that last changed it. LINES are the lines of
+     * file PATH, whose blob id is BLOBID, in the commit at
+     * graph position START.
+     * @param start int
+     * @param path String
+     * @param blobID String
+     * @param lines String[]
+     * @return int[]
+     */
+    int[] run(int start, String path, String blobID, String[] lines) {
+        int[] owner = new int[lines.length];
+        Arrays.fill(owner, -1);
+        int remaining = lines.length;
+        int[] origin = new int[lines.length];
+        int[] at = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            origin[i] = i;
+            at[i] = i;
+        }
+        String[] current = lines;
+        String currentID = blobID;
+        int pos = start;
+        while (remaining > 0) {
+            int parent = _graph.parent(pos);
+            if (parent < 0) {
+                attribute(owner, origin, remaining, pos);
+                break;
+            }
+            if (!_graph.mightChange(pos, path)) {
+                pos = parent;
+                continue;
+            }
+            String parentID = _commits.load(_graph.id(parent))
+                    .getBlobs().get(path);
+            if (currentID.equals(parentID)) {
+                pos = parent;
+                continue;
+            }
+            if (parentID == null) {
+                attribute(owner, origin, remaining, pos);
+                break;
+            }
+            String[] before = Diff.lines(_blobs.content(parentID));
+            int[] toParent = lineMap(new Diff(before, current).edits(),
+                    current.length);
+            int kept = 0;
+            for (int i = 0; i < remaining; i += 1) {
+                int moved = toParent[at[i]];
+                if (moved == -1) {
+                    owner[origin[i]] = pos;
+                } else {
+                    origin[kept] = origin[i];
+                    at[kept] = moved;
+                    kept += 1;
+                }
+            }
+            remaining = kept;
+            current = before;
+            currentID = parentID;
+            pos = parent;
+        }
+        return owner;
+    }
+
+    /**
+     * Attributes the first COUNT lines in ORIGIN to the
+     * commit at POS.
+     * @param owner int[]
+     * @param origin int[]
+     * @param count int
+     * @param pos int
+     */
+    private static void attribute(int[] owner, int[] origin, int count,
+                                  int pos) {
+        for (int i = 0; i < count; i += 1) {
+            owner[origin[i]] = pos;
+        }
+    }
+
+    /**
+     * Returns, for each of the NEWLENGTH lines of a new
+     * version, its index in the old version, or -1 if EDITS
+     * (old --> new) inserted or replaced it.
+     * @param edits List
+     * @param newLength int
+     * @return int[]
+     */
+    private static int[] lineMap(List<Diff.Edit> edits, int newLength) {
+        int[] result = new int[newLength];
+        int a = 0, b = 0;
+        for (Diff.Edit e : edits) {
+            while (b < e.beginB()) {
+                result[b] = a;
+                a += 1;
+                b += 1;
+            }
+            for (; b < e.endB(); b += 1) {
+                result[b] = -1;
+            }
+            a = e.endA();
+        }
+        while (b < newLength) {
+            result[b] = a;
+            a += 1;
+            b += 1;
+        }
+        return result;
+    }
+
+    /** The commit graph. */
+    private CommitGraph _graph;
+
+    /** Reads commits. */
+    private CommitWalk.Loader _commits;
+
+    /** Reads blob contents. */
+    private Merge.Source _blobs;
+}
@@ -1,15 +1,25 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * The class which reads and interprets commands given by user.
@@ -30,12 +40,47 @@ public class Commands {
                 _operands = Arrays.copyOfRange(args, 1, args.length);
             }
         }
+        Utils.setDurability(hidden,
+                setting(FSYNC, Utils.Sync.class, Utils.Sync.BATCH));
+        objects.setVerification(setting(VERIFY, ObjectCache.Verify.class,
+                ObjectCache.Verify.SAMPLED));
+    }
+
+    /**
+     * Returns the constant of CLS named, ignoring case, by
+     * environment variable VAR, or DEFAULTVALUE if VAR is
+     * not set or names no such constant.
+     * @param var String
+     * @param cls Class
+     * @param defaultValue E
+     * @param <E> enum type of the setting
+     * @return E
+     */
+    static <E extends Enum<E>> E setting(String var, Class<E> cls,
+                                         E defaultValue) {
+        String value = System.getenv(var);
+        if (value != null) {
+            for (E constant : cls.getEnumConstants()) {
+                if (constant.name().equalsIgnoreCase(value)) {
+                    return constant;
+                }
+            }
+        }
+        return defaultValue;
     }
 
     /**
      * Identifies which command has been given.
      */
     void doCommand() {
+        if (hidden.exists()) {
+            if (_command.equals("add")) {
+                _added = storeFiles(_operands);
+            }
+            lock(READERS.contains(_command) && !repo.pending());
+            repo.recover();
+            repo.upgrade();
+        }
         switch (_command) {
         case "init":
             initCommand();
@@ -50,7 +95,7 @@ public class Commands {
             removeCommand(_operands);
             break;
         case "log":
-            logCommand();
+            logCommand(_operands);
             break;
         case "global-log":
             globalLogCommand();
@@ -76,6 +121,18 @@ public class Commands {
         case "merge":
             mergeCommand(_operands);
             break;
+        case "diff":
+            diffCommand(_operands);
+            break;
+        case "blame":
+            blameCommand(_operands);
+            break;
+        case "gc":
+            gcCommand(_operands);
+            break;
+        case "fsck":
+            fsckCommand();
+            break;
         case "nothing entered":
             System.out.println("Please enter a command.");
             System.exit(0);
@@ -84,6 +141,48 @@ public class Commands {
             System.out.println("No command with that name exists.");
             System.exit(0);
         }
+        repo.write();
+        lock.release();
+        if (System.getenv(CACHE_STATS) != null) {
+            System.err.println(objects.stats());
+        }
+        if (System.getenv(LOCK_STATS) != null) {
+            System.err.println(lock.stats());
+        }
+    }
+
+    /**
+     * Takes the repository lock, shared if SHARED, waiting
+     * for at most the time given by LOCK_TIMEOUT.
+     * @param shared boolean
+     */
+    void lock(boolean shared) {
+        if (!lock.acquire(shared, lockTimeout())) {
+            System.out.println("Repository is locked by another command.");
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Returns the longest time, in milliseconds, to wait for
+     * the repository lock: the value of LOCK_TIMEOUT, or
+     * LOCK_WAIT if that is not set or is not a non-negative
+     * whole number.
+     * @return long
+     */
+    static long lockTimeout() {
+        String timeout = System.getenv(LOCK_TIMEOUT);
+        if (timeout != null) {
+            try {
+                long result = Long.parseLong(timeout.trim());
+                if (result >= 0) {
+                    return result;
+                }
+            } catch (NumberFormatException excp) {
+                /* Use the default. */
+            }
+        }
+        return LOCK_WAIT;
     }
 
     /**
@@ -92,28 +191,22 @@ public class Commands {
     void initCommand() {
         if (!hidden.exists()) {
             hidden.mkdir();
-            stage.mkdir();
             blobs.mkdir();
+            commits.mkdir();
             LocalDateTime firstTimeStamp =
                     LocalDateTime.ofEpochSecond(0L, 0, ZoneOffset.UTC);
             initial = new Commit("initial commit",
                     firstTimeStamp, "", "",
                     new HashMap<String, String>());
-            Branch head = new Branch("master", initial);
-            branchTracker.put(head.getName(), head.getNode());
-            Utils.writeObject(branchTrack, branchTracker);
-            Utils.writeObject(unstage, blobsToUnstage);
             Utils.writeObject(initialCommit, initial);
-            commits.mkdir();
-            headCommit.mkdir();
-            Utils.writeObject(new File(headCommit
+            Utils.writeObjectIfAbsent(new File(commits
                     + java.io.File.separator
                     + initial.getID()), initial);
-            branches.mkdir();
-            headBranch.mkdir();
-            Utils.writeObject(new File(headBranch
-                    + java.io.File.separator
-                    + Utils.sha1(Utils.serialize(head))), head);
+            repo.create();
+            repo.setHead("master", initial);
+            CommitGraph.append(graphFile, initial, null);
+            new MessageIndex(messages).add(
+                    initial.getID(), initial.getMessage());
         } else {
             System.out.println("A Gitlet version-control "
                     + "system already exists in the current directory.");
@@ -122,48 +215,72 @@ public class Commands {
     }
 
     /**
-     * Stages a file (a blob).
+     * Stages files (blobs). The files are normally stored
+     * by doCommand before the repository is locked, so that
+     * only the staging area is updated under the lock. A
+     * blob removed since, by gc, is stored again.
      * @param operands String[]
      */
     void addCommand(String[] operands) {
+        String[] added = _added != null ? _added : storeFiles(operands);
+        for (int i = 0; i < operands.length; i += 1) {
+            if (!new File(blobs, added[i]).isFile()) {
+                added[i] = storeFile(operands[i]);
+            }
+        }
+        Commit head = readHead();
+        for (int i = 0; i < operands.length; i += 1) {
+            String name = operands[i];
+            if (!added[i].equals(head.getBlobs().get(name))) {
+                repo.stage(name, added[i]);
+            } else {
+                repo.unstage(name);
+            }
+            repo.markRemoved(name, false);
+        }
+    }
+
+    /**
+     * Stores the files given to add as blobs, before the
+     * repository is locked, and returns their blob ids in
+     * the same order. The files are read and hashed in
+     * parallel, and blobs that are already stored are not
+     * written again; storing a blob needs no lock, since
+     * every copy of it has the same bytes. Exits with an
+     * error if there is no repository, no file is given or
+     * a given file does not exist.
+     * @param operands String[] names of the files to add
+     * @return String[]
+     */
+    String[] storeFiles(String[] operands) {
         if (!hidden.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
-        } else if (operands.length != 1) {
-            System.out.println(operands.length);
+        } else if (operands == null || operands.length == 0) {
             System.out.println("Incorrect operands.");
             System.exit(0);
-        } else if (!new File(operands[0]).exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
-        } else {
-            Blob file = new Blob(operands[0],
-                    Utils.readContents(
-                            new File(operands[0])));
-            Commit head = Utils.readObject(
-                    headCommit.listFiles()[0], Commit.class);
-            if (!head.getBlobs().containsValue(file.getID())
-                    || !head.getBlobs().containsKey(file.getName())) {
-                Utils.writeObject(new File(stage
-                        + java.io.File.separator + file.getID()), file);
-                Utils.writeObject(new File(blobs
-                        + java.io.File.separator + file.getID()), file);
-            } else if (inStaged(operands[0])) {
-                for (File f : stage.listFiles()) {
-                    Blob newBlob = Utils.readObject(f, Blob.class);
-                    if (newBlob.getName().equals(operands[0])) {
-                        f.delete();
-                    }
-                }
-            }
-            blobsToUnstage = Utils.readObject(unstage, HashSet.class);
-            if (!blobsToUnstage.isEmpty()) {
-                if (blobsToUnstage.contains(file.getName())) {
-                    blobsToUnstage.remove(file.getName());
-                }
-                Utils.writeObject(unstage, blobsToUnstage);
+        }
+        for (String name : operands) {
+            if (!new File(name).exists()) {
+                System.out.println("File does not exist.");
+                System.exit(0);
             }
         }
+        return Arrays.stream(operands).parallel()
+                .map(this::storeFile).toArray(String[]::new);
+    }
+
+    /**
+     * Stores file NAME as a blob, unless it is already
+     * stored, and returns the blob's id.
+     * @param name String
+     * @return String
+     */
+    String storeFile(String name) {
+        Blob file = new Blob(name, Utils.readContents(new File(name)));
+        Utils.writeObjectIfAbsent(new File(blobs
+                + java.io.File.separator + file.getID()), file);
+        return file.getID();
     }
 
     /**
@@ -182,49 +299,33 @@ public class Commands {
                 || operands[0].equals("")) {
             System.out.println("Please enter a commit message.");
             System.exit(0);
-        } else if (stage.listFiles().length == 0
-                && Utils.readObject(unstage, HashSet.class).isEmpty()) {
+        } else if (repo.staged().isEmpty() && repo.removed().isEmpty()) {
             System.out.println("No changes added to the commit.");
             System.exit(0);
         } else {
-            Commit parent = Utils.readObject(
-                    headCommit.listFiles()[0], Commit.class);
-            HashMap<String, String> parentBlobs = parent.getBlobs();
-            blobsToUnstage = Utils.readObject(unstage, HashSet.class);
-            parentBlobs.keySet().removeAll(blobsToUnstage);
+            Commit parent = readHead();
+            HashMap<String, String> parentBlobs =
+                    new HashMap<>(parent.getBlobs());
+            parentBlobs.keySet().removeAll(repo.removed());
             Commit newNode = new Commit(operands[0],
                     LocalDateTime.now(), parent.getID(), "", parentBlobs);
 
-            branchTracker = Utils.readObject(
-                    branchTrack, HashMap.class);
-            Branch newBranch = new Branch(
-                    Utils.readObject(headBranch.listFiles()[0],
-                            Branch.class).getName(), newNode);
-            branchTracker.put(
-                    newBranch.getName(), newBranch.getNode());
-
-            for (File f : stage.listFiles()) {
-                Blob newBlob = Utils.readObject(f, Blob.class);
-                if (!blobsToUnstage.contains(newBlob.getName())) {
-                    newNode.getBlobs().put(newBlob.getName(), newBlob.getID());
+            for (Map.Entry<String, String> e : repo.staged().entrySet()) {
+                if (!repo.removed().contains(e.getKey())) {
+                    newNode.getBlobs().put(e.getKey(), e.getValue());
                 }
-                f.delete();
             }
-            blobsToUnstage.clear();
+            repo.clearStage();
+            repo.clearRemoved();
 
-            File tempCommit = headCommit.listFiles()[0];
-            tempCommit.renameTo(new File(commits
-                    + File.separator + tempCommit.getName()));
-
-            headBranch.listFiles()[0].delete();
-            Utils.writeObject(new File(headCommit
+            Utils.writeObjectIfAbsent(new File(commits
                     + java.io.File.separator + newNode.getID()), newNode);
-            Utils.writeObject(new File(headBranch
-                    + java.io.File.separator
-                            + Utils.sha1(Utils.serialize(newBranch))),
-                    newBranch);
-            Utils.writeObject(unstage, blobsToUnstage);
-            Utils.writeObject(branchTrack, branchTracker);
+            addToGraph(newNode, parent);
+            repo.setHead(repo.currentBranch(), newNode);
+            if (messages.exists()) {
+                new MessageIndex(messages).add(
+                        newNode.getID(), newNode.getMessage());
+            }
         }
     }
 
@@ -240,150 +341,273 @@ public class Commands {
         } else if (operands.length != 1) {
             System.out.println("Incorrect operands.");
             System.exit(0);
-        } else if (!Utils.readObject(headCommit.listFiles()[0],
-                Commit.class).getBlobs().containsKey(operands[0])
+        } else if (!readHead().getBlobs().containsKey(operands[0])
                     && !inStaged(operands[0])) {
             System.out.println("No reason to remove the file.");
             System.exit(0);
         } else {
-            HashMap<String, String> headBlobs =
-                    Utils.readObject(headCommit.listFiles()[0],
-                            Commit.class).getBlobs();
+            HashMap<String, String> headBlobs = readHead().getBlobs();
             if (headBlobs.containsKey(operands[0])) {
-                blobsToUnstage = Utils.readObject(unstage, HashSet.class);
                 new File(operands[0]).delete();
-                blobsToUnstage.add(operands[0]);
-                Utils.writeObject(unstage, blobsToUnstage);
-            }
-            if (inStaged(operands[0])) {
-                for (File f : stage.listFiles()) {
-                    Blob newBlob = Utils.readObject(f, Blob.class);
-                    if (newBlob.getName().equals(operands[0])) {
-                        f.delete();
-                    }
-                }
+                repo.markRemoved(operands[0], true);
             }
+            repo.unstage(operands[0]);
         }
     }
 
     /**
-     * Outputs the commit history.
+     * Outputs the commit history, streaming it through
+     * one buffered writer. Accepts -n COUNT to print at
+     * most COUNT commits, --skip COUNT to leave out
+     * the most recent COUNT commits, and --since DATE
+     * and --until DATE to print only commits made in
+     * that window. log [OPTIONS] -- FILE prints only
+     * the commits that changed FILE.
+     * @param operands String[]
      */
-    void logCommand() {
+    void logCommand(String[] operands) {
         if (!hidden.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
+        }
+        int limit = Integer.MAX_VALUE, skip = 0;
+        long since = Long.MIN_VALUE, until = Long.MAX_VALUE;
+        String path = null;
+        if (operands != null && operands.length >= 2
+                && operands[operands.length - 2].equals("--")) {
+            path = operands[operands.length - 1];
+            operands = Arrays.copyOf(operands, operands.length - 2);
+        }
+        if (operands != null) {
+            if (operands.length % 2 != 0) {
+                System.out.println("Incorrect operands.");
+                System.exit(0);
+            }
+            for (int i = 0; i < operands.length; i += 2) {
+                switch (operands[i]) {
+                case "-n":
+                    limit = parseCount(operands[i + 1]);
+                    break;
+                case "--skip":
+                    skip = parseCount(operands[i + 1]);
+                    break;
+                case "--since":
+                    since = parseDate(operands[i + 1], false);
+                    break;
+                case "--until":
+                    until = parseDate(operands[i + 1], true);
+                    break;
+                default:
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+            }
+        }
+        PrintStream out = openOutput();
+        if (path != null) {
+            logPath(out, path, since, until, skip, limit);
+        } else if (since == Long.MIN_VALUE && until == Long.MAX_VALUE) {
+            CommitWalk walk = new CommitWalk(readHead(),
+                    this::readCommit);
+            walk.skip(skip);
+            for (int i = 0; i < limit && walk.hasNext(); i += 1) {
+                printCommit(out, walk.next());
+            }
         } else {
-            Commit curr = Utils.readObject(
-                    headCommit.listFiles()[0], Commit.class);
-            while (true) {
-                System.out.println("===");
-                System.out.println("commit " +  curr.getID());
-                if (!curr.getParent2().equals("")) {
-                    System.out.println("Merge: "
-                            + curr.getParent().substring(0, 7)
-                            + " " + curr.getParent2().substring(0, 7));
+            CommitGraph all = commitGraph();
+            BitSet window = new BitSet(all.size());
+            int remaining = 0;
+            for (int pos : all.between(since, until)) {
+                window.set(pos);
+                remaining += 1;
+            }
+            int pos = all.position(repo.headID());
+            for (; pos >= 0 && remaining > 0 && limit > 0;
+                 pos = all.parent(pos)) {
+                if (window.get(pos)) {
+                    remaining -= 1;
+                    if (skip > 0) {
+                        skip -= 1;
+                    } else {
+                        printCommit(out, readCommit(all.id(pos)));
+                        limit -= 1;
+                    }
                 }
-                LocalDateTime date = curr.getTimeStamp();
-                DateTimeFormatter formatter =
-                        DateTimeFormatter.ofPattern("E MMM d HH:mm:ss YYYY");
-                System.out.println("Date: "
-                        + date.format(formatter) + " -0800");
-                System.out.println(curr.getMessage());
-                System.out.println();
-                if (findCommitWithParent(curr.getParent()) == null) {
-                    return;
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Prints to OUT the commits in the first-parent history
+     * of the head that changed PATH, made between SINCE and
+     * UNTIL, leaving out the first SKIP and printing at
+     * most LIMIT. Commits whose changed-path filter rules
+     * out PATH are passed over without being read.
+     * @param out PrintStream
+     * @param path String
+     * @param since long
+     * @param until long
+     * @param skip int
+     * @param limit int
+     */
+    void logPath(PrintStream out, String path, long since, long until,
+                 int skip, int limit) {
+        CommitGraph all = commitGraph();
+        Commit parent = null;
+        int pos = all.position(repo.headID());
+        for (; pos >= 0 && limit > 0; pos = all.parent(pos)) {
+            if (all.time(pos) < since || all.time(pos) > until
+                    || !all.mightChange(pos, path)) {
+                parent = null;
+                continue;
+            }
+            Commit curr = parent != null ? parent : readCommit(all.id(pos));
+            int up = all.parent(pos);
+            parent = up < 0 ? null : readCommit(all.id(up));
+            String before = parent == null ? null
+                    : parent.getBlobs().get(path);
+            String after = curr.getBlobs().get(path);
+            if (after == null ? before == null : after.equals(before)) {
+                continue;
+            }
+            if (skip > 0) {
+                skip -= 1;
+            } else {
+                printCommit(out, curr);
+                limit -= 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the time in OPERAND, a date (yyyy-mm-dd)
+     * or date and time (yyyy-mm-ddThh:mm:ss), in epoch
+     * seconds. A bare date means the start of that day,
+     * or its end if ENDOFDAY. Exits with an error if
+     * OPERAND is not a date.
+     * @param operand String
+     * @param endOfDay boolean
+     * @return long
+     */
+    long parseDate(String operand, boolean endOfDay) {
+        try {
+            LocalDateTime time;
+            if (operand.contains("T")) {
+                time = LocalDateTime.parse(operand);
+            } else {
+                time = LocalDate.parse(operand).atStartOfDay();
+                if (endOfDay) {
+                    time = time.plusDays(1).minusSeconds(1);
                 }
-                curr = findCommitWithParent(curr.getParent());
             }
+            return time.toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException excp) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+            return 0;
         }
     }
 
+    /**
+     * Returns the non-negative count in OPERAND, exiting
+     * with an error if it is not one.
+     * @param operand String
+     * @return int
+     */
+    int parseCount(String operand) {
+        try {
+            int count = Integer.parseInt(operand);
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        System.out.println("Incorrect operands.");
+        System.exit(0);
+        return 0;
+    }
+
+    /**
+     * Prints the log entry of COMM to OUT.
+     * @param out PrintStream
+     * @param comm Commit
+     */
+    void printCommit(PrintStream out, Commit comm) {
+        out.println("===");
+        out.println("commit " + comm.getID());
+        if (!comm.getParent2().equals("")) {
+            out.println("Merge: "
+                    + comm.getParent().substring(0, 7)
+                    + " " + comm.getParent2().substring(0, 7));
+        }
+        out.println("Date: "
+                + comm.getTimeStamp().format(LOG_DATE) + " -0800");
+        out.println(comm.getMessage());
+        out.println();
+    }
+
     /**
      * Outputs commit history of all
-     * commits ever made.
+     * commits ever made, newest first. Commits are
+     * enumerated from the commit graph and read in
+     * parallel, a batch at a time, then printed in order.
      */
     void globalLogCommand() {
         if (!hidden.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
         }
-        for (int i = 0; i < commits.listFiles().length; i++) {
-            if (commits.listFiles()[i].isDirectory()) {
-                Commit curr = Utils.readObject(
-                        headCommit.listFiles()[0], Commit.class);
-                System.out.println("===");
-                System.out.println("commit " + curr.getID());
-                if (!curr.getParent2().equals("")) {
-                    System.out.println("Merge: "
-                            + curr.getParent().substring(0, 7)
-                            + " " + curr.getParent2().substring(0, 7));
-                }
-                LocalDateTime date = curr.getTimeStamp();
-                DateTimeFormatter formatter =
-                        DateTimeFormatter.ofPattern("E MMM d HH:mm:ss YYYY");
-                System.out.println("Date: "
-                        + date.format(formatter) + " -0800");
-                System.out.println(curr.getMessage());
-                System.out.println();
-            } else {
-                Commit curr = Utils.readObject(
-                        commits.listFiles()[i], Commit.class);
-                System.out.println("===");
-                System.out.println("commit " + curr.getID());
-                if (!curr.getParent2().equals("")) {
-                    System.out.println("Merge: "
-                            + curr.getParent().substring(0, 8)
-                            + curr.getParent2().substring(0, 8));
-                }
-                LocalDateTime date = curr.getTimeStamp();
-                DateTimeFormatter formatter =
-                        DateTimeFormatter.ofPattern("E MMM d HH:mm:ss YYYY");
-                System.out.println("Date: "
-                        + date.format(formatter) + " -0800");
-                System.out.println(curr.getMessage());
-                System.out.println();
+        CommitGraph graph = commitGraph();
+        PrintStream out = openOutput();
+        for (int end = graph.size(); end > 0; end -= LOG_BATCH) {
+            String[] ids = new String[Math.min(LOG_BATCH, end)];
+            for (int i = 0; i < ids.length; i += 1) {
+                ids[i] = graph.id(end - 1 - i);
+            }
+            Commit[] batch = Arrays.stream(ids).parallel()
+                    .map(this::readCommit).toArray(Commit[]::new);
+            for (Commit c : batch) {
+                printCommit(out, c);
             }
         }
+        out.flush();
     }
 
     /**
      * Finds the commit(s) with given
-     * commit message.
+     * commit message, or with --words, the commits
+     * whose messages contain all the given words.
+     * Answers from the message index without
+     * reading commits.
      * @param operands String[]
      */
     void findCommand(String[] operands) {
         if (!hidden.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
-        } else if (operands.length != 1) {
+        } else if (operands == null || operands.length == 0
+                || (operands.length > 1 && !operands[0].equals("--words"))) {
             System.out.println("Incorrect operands.");
             System.exit(0);
         } else {
-            boolean noneExist = true;
-
-            for (int i = 0; i < commits.listFiles().length; i++) {
-                if (commits.listFiles()[i].isDirectory()) {
-                    if (Utils.readObject(headCommit.listFiles()[0],
-                            Commit.class).getMessage().equals(operands[0])) {
-                        System.out.println(Utils.readObject(
-                                headCommit.listFiles()[0],
-                                Commit.class).getID());
-                        noneExist = false;
-                    }
-                } else {
-                    if (Utils.readObject(commits.listFiles()[i],
-                            Commit.class).getMessage().equals(operands[0])) {
-                        System.out.println(Utils.readObject(
-                                commits.listFiles()[i], Commit.class).getID());
-                        noneExist = false;
-                    }
-                }
+            List<String> found;
+            if (operands[0].equals("--words") && operands.length > 1) {
+                found = messageIndex().allWords(
+                        Arrays.copyOfRange(operands, 1, operands.length));
+            } else {
+                found = messageIndex().exact(operands[0]);
             }
-            if (noneExist) {
+            if (found.isEmpty()) {
                 System.out.println("Found no commit with that message.");
                 System.exit(0);
             }
+            PrintStream out = openOutput();
+            for (String id : found) {
+                out.println(id);
+            }
+            out.flush();
         }
     }
 
@@ -395,31 +619,24 @@ public class Commands {
             System.out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
         }
-        branchTracker =
-                Utils.readObject(branchTrack, HashMap.class);
+        String current = repo.currentBranch();
         System.out.println("=== Branches ===");
-        System.out.println("*" + Utils.readObject(
-                headBranch.listFiles()[0], Branch.class).getName());
-        for (String str : branchTracker.keySet()) {
-            if (!str.equals(Utils.readObject(
-                    headBranch.listFiles()[0], Branch.class).getName())) {
+        System.out.println("*" + current);
+        for (String str : repo.branches().keySet()) {
+            if (!str.equals(current)) {
                 System.out.println(str);
             }
         }
         System.out.println();
         System.out.println("=== Staged Files ===");
-        for (File f : stage.listFiles()) {
-            Blob newBlob = Utils.readObject(f, Blob.class);
-            System.out.println(newBlob.getName());
+        for (String name : repo.staged().keySet()) {
+            System.out.println(name);
         }
         System.out.println();
 
         System.out.println("=== Removed Files ===");
-        blobsToUnstage = Utils.readObject(unstage, HashSet.class);
-        if (!blobsToUnstage.isEmpty()) {
-            for (String str : blobsToUnstage) {
-                System.out.println(str);
-            }
+        for (String str : repo.removed()) {
+            System.out.println(str);
         }
         System.out.println();
 
@@ -469,17 +686,13 @@ public class Commands {
             System.out.println("Incorrect operands.");
             System.exit(0);
         }
-        Commit head = Utils.readObject(
-                headCommit.listFiles()[0], Commit.class);
+        Commit head = readHead();
         if (!head.getBlobs().containsKey(operands[1])) {
             System.out.println("File does not exist in that commit.");
             System.exit(0);
         } else {
             Blob headBlob =
-                    Utils.readObject(new File(blobs
-                                    + java.io.File.separator
-                                    + head.getBlobs().get(operands[1])),
-                            Blob.class);
+                    readBlob(head.getBlobs().get(operands[1]));
             Utils.writeContents(new File("."
                             + java.io.File.separator + operands[1]),
                     headBlob.getContent());
@@ -503,10 +716,7 @@ public class Commands {
             System.out.println("File does not exist in that commit.");
             System.exit(0);
         } else {
-            Blob givenBlob = Utils.readObject(new File(
-                            blobs + java.io.File.separator
-                                    + given.getBlobs().get(operands[2])),
-                    Blob.class);
+            Blob givenBlob = readBlob(given.getBlobs().get(operands[2]));
             Utils.writeContents(new File("."
                             + java.io.File.separator + operands[2]),
                     givenBlob.getContent());
@@ -519,21 +729,17 @@ public class Commands {
      */
     void checkoutCase3(String[] operands) {
         Commit given = null;
-        branchTracker =
-                Utils.readObject(branchTrack, HashMap.class);
-        if (!branchTracker.containsKey(operands[0])) {
+        if (repo.branch(operands[0]) == null) {
             System.out.println("No such branch exists.");
             System.exit(0);
-        } else if ((Utils.readObject(headBranch.listFiles()[0],
-                Branch.class).getName().equals(operands[0]))) {
+        } else if (repo.currentBranch().equals(operands[0])) {
             System.out.println("No need to "
                     + "checkout the current branch.");
             System.exit(0);
         } else {
             initial = Utils.readObject(
                     initialCommit, Commit.class);
-            if (branchTracker.get(
-                    operands[0]).equals(initial.getID())) {
+            if (repo.branch(operands[0]).equals(initial.getID())) {
                 given = initial;
             } else {
                 if (!isTrackedGivenBranch(operands[0])) {
@@ -541,40 +747,20 @@ public class Commands {
                             + "in the way; delete it or add it first.");
                     System.exit(0);
                 }
-                given = Utils.readObject(new File(commits
-                                + java.io.File.separator
-                                + branchTracker.get(operands[0])),
-                        Commit.class);
+                given = readCommit(repo.branch(operands[0]));
             }
         }
 
         HashMap<String, String> allBlobs = given.getBlobs();
         for (String blobName : allBlobs.keySet()) {
-            Blob aBlob = Utils.readObject(new File(blobs
-                    + java.io.File.separator
-                    + allBlobs.get(blobName)), Blob.class);
+            Blob aBlob = readBlob(allBlobs.get(blobName));
             Utils.writeContents(new File("."
                             + java.io.File.separator + blobName),
                     aBlob.getContent());
         }
-        headBranch.listFiles()[0].delete();
-        Branch theBranch = new Branch(operands[0], given);
-        Utils.writeObject(new File(headBranch
-                + java.io.File.separator
-                + Utils.sha1(Utils.serialize(theBranch))), theBranch);
-        for (File f : stage.listFiles()) {
-            f.delete();
-        }
-
         removeFromWDGivenBranch(operands[0], given);
-
-        File tempCommit = headCommit.listFiles()[0];
-        tempCommit.renameTo(new File(commits
-                + java.io.File.separator + tempCommit.getName()));
-        Utils.writeObject(new File(headCommit
-                + java.io.File.separator + given.getID()), given);
-        new File(commits
-                + java.io.File.separator + given.getID()).delete();
+        repo.clearStage();
+        repo.setHead(operands[0], given);
     }
 
     /**
@@ -589,17 +775,11 @@ public class Commands {
             System.out.println("Incorrect operands.");
             System.exit(0);
         } else {
-            branchTracker =
-                    Utils.readObject(branchTrack, HashMap.class);
-            if (branchTracker.containsKey(operands[0])) {
+            if (repo.branch(operands[0]) != null) {
                 System.out.println("A branch with that name already exists.");
                 System.exit(0);
             } else {
-                Branch br = new Branch(operands[0],
-                        Utils.readObject(headCommit.listFiles()[0],
-                                Commit.class));
-                branchTracker.put(br.getName(), br.getNode());
-                Utils.writeObject(branchTrack, branchTracker);
+                repo.setBranch(operands[0], repo.headID());
             }
         }
     }
@@ -616,19 +796,15 @@ public class Commands {
             System.out.println("Incorrect operands.");
             System.exit(0);
         } else {
-            branchTracker =
-                    Utils.readObject(branchTrack, HashMap.class);
-            if (!branchTracker.containsKey(operands[0])) {
+            if (repo.branch(operands[0]) == null) {
                 System.out.println("A branch with "
                         + "that name does not exist.");
                 System.exit(0);
-            } else if (Utils.readObject(headBranch.listFiles()[0],
-                    Branch.class).getName().equals(operands[0])) {
+            } else if (repo.currentBranch().equals(operands[0])) {
                 System.out.println("Cannot remove the current branch.");
                 System.exit(0);
             } else {
-                branchTracker.remove(operands[0]);
-                Utils.writeObject(branchTrack, branchTracker);
+                repo.removeBranch(operands[0]);
             }
         }
     }
@@ -658,44 +834,15 @@ public class Commands {
         } else {
             HashMap<String, String> allBlobs = given.getBlobs();
             for (String blobName : allBlobs.keySet()) {
-                Blob aBlob = Utils.readObject(
-                        new File(blobs
-                                + java.io.File.separator
-                                + allBlobs.get(blobName)),
-                        Blob.class);
+                Blob aBlob = readBlob(allBlobs.get(blobName));
                 Utils.writeContents(new File(
                         "." + java.io.File.separator
                                 + aBlob.getName()),
                         aBlob.getContent());
             }
-            branchTracker =
-                    Utils.readObject(branchTrack, HashMap.class);
             removeFromWDGivenCommit(operands[0]);
-            Branch currHeadBranch =
-                    Utils.readObject(
-                            headBranch.listFiles()[0], Branch.class);
-            headBranch.listFiles()[0].delete();
-            Branch newHeadBranch =
-                    new Branch(currHeadBranch.getName(), given);
-            branchTracker.put(newHeadBranch.getName(),
-                    newHeadBranch.getNode());
-            Utils.writeObject(new File(headBranch
-                    + java.io.File.separator
-                    + Utils.sha1(Utils.serialize(newHeadBranch))),
-                    newHeadBranch);
-            Utils.writeObject(branchTrack, branchTracker);
-
-            File tempCommit = headCommit.listFiles()[0];
-            tempCommit.renameTo(new File(commits
-                    + java.io.File.separator
-                    + tempCommit.getName()));
-            Utils.writeObject(new File(headCommit
-                    + java.io.File.separator + given.getID()), given);
-            new File(commits
-                    + java.io.File.separator + given.getID()).delete();
-            for (File f : stage.listFiles()) {
-                f.delete();
-            }
+            repo.setHead(repo.currentBranch(), given);
+            repo.clearStage();
         }
     }
 
@@ -711,17 +858,14 @@ public class Commands {
         } else if (operands.length != 1) {
             System.out.println("Incorrect operands.");
             System.exit(0);
-        } else if (stage.listFiles().length > 0
-                || !Utils.readObject(unstage, HashSet.class).isEmpty()) {
+        } else if (!repo.staged().isEmpty() || !repo.removed().isEmpty()) {
             System.out.println("You have uncommitted changes.");
             System.exit(0);
         }
-        if (!Utils.readObject(branchTrack,
-                HashMap.class).containsKey(operands[0])) {
+        if (repo.branch(operands[0]) == null) {
             System.out.println("A branch with that name does not exist.");
             System.exit(0);
-        } else if (operands[0].equals(Utils.readObject(
-                headBranch.listFiles()[0], Branch.class).getName())) {
+        } else if (operands[0].equals(repo.currentBranch())) {
             System.out.println("Cannot merge a branch with itself.");
             System.exit(0);
         } else if (!isTrackedGivenBranch(operands[0])) {
@@ -730,28 +874,26 @@ public class Commands {
             System.exit(0);
         } else {
             Commit splitPoint = findSplitPoint(operands);
-            Commit given = Utils.readObject(
-                    new File(commits + java.io.File.separator
-                            + Utils.readObject(branchTrack,
-                            HashMap.class).get(operands[0])), Commit.class);
-            Commit head = (Utils.readObject(
-                    headCommit.listFiles()[0], Commit.class));
-
-            mergeCase1(operands, splitPoint, given, head);
-
-            headFiles = (HashMap) head.getBlobs().clone();
-            givenFiles = (HashMap) given.getBlobs().clone();
-            splitPointFiles = (HashMap) splitPoint.getBlobs().clone();
-            splitPointFiles.keySet().removeAll(
-                        headFiles.keySet());
-            givenFiles.values().retainAll(
-                        splitPointFiles.values());
-            HashMap<String, String>
-                    notModifiedInGivenSinceSplitAndNotInHead = givenFiles;
-            noConflict.addAll(
-                    notModifiedInGivenSinceSplitAndNotInHead.keySet());
-
-            mergeConflictCase(operands, splitPoint, given, head);
+            Commit given = readCommit(repo.branch(operands[0]));
+            Commit head = readHead();
+
+            if (splitPoint.getID().equals(given.getID())) {
+                System.out.println("Given branch is an "
+                        + "ancestor of the current branch.");
+                System.exit(0);
+            } else if (splitPoint.getID().equals(head.getID())) {
+                resetCommand(new String[] {given.getID()});
+                System.out.println("Current branch fast-forwarded");
+                return;
+            }
+
+            boolean conflict = new Merge(splitPoint.getBlobs(),
+                    head.getBlobs(), given.getBlobs(), this::blobContent)
+                    .run(this::mergeApply);
+
+            mergeCommitCommand(new String[]{"Merged "
+                    + operands[0] + " into " + repo.currentBranch()
+                    + ".", given.getID()}, conflict);
         }
     }
 
@@ -760,337 +902,400 @@ public class Commands {
      * @param operands String[] where first arg is
      *                 commit message and second arg is
      *                 second parent commit's ID
-     * @param conflicts HashSet
+     * @param conflict true iff the merge had conflicts
      */
-    void mergeCommitCommand(String[] operands, HashSet<String> conflicts) {
-        if (stage.listFiles().length == 0
-                && Utils.readObject(unstage,
-                HashSet.class).isEmpty()) {
+    void mergeCommitCommand(String[] operands, boolean conflict) {
+        if (repo.staged().isEmpty() && repo.removed().isEmpty()) {
             System.out.println("No changes added to the commit.");
             System.exit(0);
         } else {
-            Commit parent = Utils.readObject(
-                    headCommit.listFiles()[0], Commit.class);
-            Commit secondParent = Utils.readObject(new File(
-                    commits + java.io.File.separator
-                            + operands[1]), Commit.class);
-            HashMap<String, String> parentBlobs = parent.getBlobs();
-            blobsToUnstage = Utils.readObject(unstage, HashSet.class);
-            parentBlobs.keySet().removeAll(blobsToUnstage);
+            Commit parent = readHead();
+            Commit secondParent = readCommit(operands[1]);
+            HashMap<String, String> parentBlobs =
+                    new HashMap<>(parent.getBlobs());
+            parentBlobs.keySet().removeAll(repo.removed());
             Commit newNode = new Commit(operands[0],
                     LocalDateTime.now(), parent.getID(),
                     secondParent.getID(), parentBlobs);
 
-            branchTracker = Utils.readObject(branchTrack, HashMap.class);
-            Branch newBranch = new Branch(Utils.readObject(
-                    headBranch.listFiles()[0],
-                    Branch.class).getName(), newNode);
-            branchTracker.put(newBranch.getName(), newBranch.getNode());
-
-            for (File f : stage.listFiles()) {
-                Blob newBlob = Utils.readObject(f, Blob.class);
-                if (!blobsToUnstage.contains(newBlob.getName())) {
-                    newNode.getBlobs().put(
-                            newBlob.getName(), newBlob.getID());
+            for (Map.Entry<String, String> e : repo.staged().entrySet()) {
+                if (!repo.removed().contains(e.getKey())) {
+                    newNode.getBlobs().put(e.getKey(), e.getValue());
                 }
-                f.delete();
             }
+            repo.clearStage();
+            repo.clearRemoved();
 
-            blobsToUnstage.clear();
-
-            File tempCommit = headCommit.listFiles()[0];
-            tempCommit.renameTo(new File(commits
-                    + File.separator + tempCommit.getName()));
-
-            headBranch.listFiles()[0].delete();
-            Utils.writeObject(new File(headCommit
+            Utils.writeObjectIfAbsent(new File(commits
                     + java.io.File.separator + newNode.getID()), newNode);
-            Utils.writeObject(new File(headBranch
-                    + java.io.File.separator
-                    + Utils.sha1(Utils.serialize(newBranch))), newBranch);
-            Utils.writeObject(unstage, blobsToUnstage);
-            Utils.writeObject(branchTrack, branchTracker);
-            if (!conflicts.isEmpty()) {
+            addToGraph(newNode, parent);
+            repo.setHead(repo.currentBranch(), newNode);
+            if (messages.exists()) {
+                new MessageIndex(messages).add(
+                        newNode.getID(), newNode.getMessage());
+            }
+            if (conflict) {
                 System.out.println("Encountered a merge conflict.");
             }
         }
     }
 
     /**
-     * Finds the split point of a commit tree.
+     * Finds the split point of a commit tree: the best
+     * common ancestor of the head and the given branch,
+     * found in the commit graph without reading commits.
      * @param operands String[]
      * @return Commit
      */
     Commit findSplitPoint(String[] operands) {
-        Commit splitPoint = null;
-        Commit given = Utils.readObject(
-                new File(commits + java.io.File.separator
-                        + Utils.readObject(branchTrack,
-                        HashMap.class).get(operands[0])), Commit.class);
-        Commit head = (Utils.readObject(
-                headCommit.listFiles()[0], Commit.class));
-        HashSet<String> ancestorsOfHead = findAncestors(head);
-        HashSet<String> ancestorsOfGiven = findAncestors(given);
-        ancestorsOfHead.retainAll(ancestorsOfGiven);
-        HashSet<String> ancestorsOfBoth = ancestorsOfHead;
-
-        for (String id : ancestorsOfBoth) {
-            Commit ancestralCommitWithID;
-            if (!new File(commits
-                    + java.io.File.separator + id).exists()) {
-                ancestralCommitWithID = Utils.readObject(new File(
-                        headCommit + java.io.File.separator
-                                + id), Commit.class);
-            } else {
-                ancestralCommitWithID = Utils.readObject(new File(
-                        commits + java.io.File.separator
-                                + id), Commit.class);
-            }
-            if (splitPoint == null) {
-                splitPoint = ancestralCommitWithID;
-            } else if (splitPoint.getTimeStamp().isBefore(
-                    ancestralCommitWithID.getTimeStamp())) {
-                splitPoint = ancestralCommitWithID;
-            }
+        CommitGraph all = commitGraph();
+        String given = repo.branch(operands[0]);
+        if (!all.contains(given)) {
+            rebuildGraph();
+            all = graph;
         }
-        return splitPoint;
+        int base = new CommitDag(all).mergeBase(
+                all.position(repo.headID()), all.position(given));
+        return base == -1 ? null : readCommit(all.id(base));
     }
 
     /**
-     * First case of merge.
-     * @param operands String[]
-     * @param splitPoint Commit
-     * @param given Commit
-     * @param head Commit
-     */
-    void mergeCase1(String[] operands, Commit splitPoint,
-                    Commit given, Commit head) {
-        if (splitPoint.getID().equals(given.getID())) {
-            System.out.println("Given branch is an "
-                    + "ancestor of the current branch.");
-            System.exit(0);
-        } else if (splitPoint.getID().equals(head.getID())) {
-            headBranch.listFiles()[0].delete();
-            Branch theBranch = new Branch(operands[0], given);
-            Utils.writeObject(new File(headBranch
-                    + java.io.File.separator
-                    + Utils.sha1(Utils.serialize(theBranch))), theBranch);
-            File tempCommit = headCommit.listFiles()[0];
-            tempCommit.renameTo(new File(commits
-                    + java.io.File.separator + tempCommit.getName()));
-            Utils.writeObject(new File(headCommit
-                    + java.io.File.separator + given.getID()), given);
-            new File(commits + java.io.File.separator
-                    + given.getID()).delete();
-            System.out.println("Current branch fast-forwarded");
-            System.exit(0);
-        } else {
-            mergeCase2(operands, splitPoint, given, head);
+     * Carries out the merge ACTION chosen for PATH.
+     * @param path String
+     * @param action Merge.Action
+     * @param headID String blob id in the head, or null
+     * @param givenID String blob id in the given commit, or null
+     */
+    void mergeApply(String path, Merge.Action action,
+                    String headID, String givenID) {
+        switch (action) {
+        case TAKE_GIVEN:
+            mergeCheckout(path, givenID);
+            break;
+        case MOVE_HEAD:
+            mergeCheckout(path, headID);
+            break;
+        case REMOVE:
+            new File("." + java.io.File.separator + path).delete();
+            repo.markRemoved(path, true);
+            break;
+        case CONFLICT:
+            mergeConflictCase(path, headID, givenID);
+            break;
+        default:
+            break;
         }
     }
 
     /**
-     * Second case of merge.
-     * @param operands String[]
-     * @param splitPoint Commit
-     * @param given Commit
-     * @param head Commit
-     */
-    void mergeCase2(String[] operands, Commit splitPoint,
-                    Commit given, Commit head) {
-        splitPointFiles = (HashMap) splitPoint.getBlobs().clone();
-        headFiles = (HashMap) head.getBlobs().clone();
-        givenFiles = (HashMap) given.getBlobs().clone();
-
-        headFiles.values().retainAll(splitPointFiles.values());
-        notModifiedInHeadSinceSplit = headFiles;
-
-        givenFiles.keySet().retainAll(splitPointFiles.keySet());
-        splitPointFiles.values().retainAll(givenFiles.values());
-        givenFiles.values().removeAll(splitPointFiles.values());
-        modifiedInGivenSinceSplit = givenFiles;
-
-        notModifiedInHeadSinceSplit.values().retainAll(
-                modifiedInGivenSinceSplit.values());
-        HashMap<String, String>
-                notModifiedInHeadButModifiedInGiven =
-                notModifiedInHeadSinceSplit;
-
-        for (String blobName
-                : notModifiedInHeadButModifiedInGiven.keySet()) {
-            noConflict.add(blobName);
-            Blob aBlob = Utils.readObject(new File(
-                            blobs + java.io.File.separator
-                                    + notModifiedInHeadButModifiedInGiven.get(
-                                    blobName)),
-                    Blob.class);
-            Utils.writeContents(new File("."
-                            + java.io.File.separator + aBlob.getName()),
-                    aBlob.getContent());
-            Utils.writeObject(new File(stage
+     * Checks out the blob BLOBID as file PATH during
+     * merge, and stages it. The blob may come from a
+     * different path when the file was renamed.
+     * @param path String
+     * @param blobID String
+     */
+    void mergeCheckout(String path, String blobID) {
+        Blob aBlob = readBlob(blobID);
+        if (!aBlob.getName().equals(path)) {
+            aBlob = new Blob(path, aBlob.getContent());
+            Utils.writeObjectIfAbsent(new File(blobs
                     + java.io.File.separator + aBlob.getID()), aBlob);
         }
-        mergeCase3(operands, splitPoint, given, head);
+        Utils.writeContents(new File("."
+                        + java.io.File.separator + path),
+                aBlob.getContent());
+        repo.stage(aBlob.getName(), aBlob.getID());
     }
 
     /**
-     * Third case of merge.
-     * @param operands String[]
-     * @param splitPoint Commit
-     * @param given Commit
-     * @param head Commit
-     */
-    void mergeCase3(String[] operands, Commit splitPoint,
-                    Commit given, Commit head) {
-        headFiles = (HashMap) head.getBlobs().clone();
-        HashMap<String, String> tempHeadFiles =
-                (HashMap) head.getBlobs().clone();
-        givenFiles = (HashMap) given.getBlobs().clone();
-        splitPointFiles = (HashMap) splitPoint.getBlobs().clone();
-
-        givenFiles.values().retainAll(splitPointFiles.values());
-        notModifiedInGivenSinceSplit = givenFiles;
-
-        splitPointFiles = (HashMap) splitPoint.getBlobs().clone();
-
-        tempHeadFiles.values().retainAll(
-                splitPointFiles.values());
-        headFiles.keySet().removeAll(
-                tempHeadFiles.keySet());
-        modifiedInHeadSinceSplit = headFiles;
-
-        modifiedInHeadSinceSplit.keySet().retainAll(
-                notModifiedInGivenSinceSplit.keySet());
-        noConflict.addAll(modifiedInHeadSinceSplit.keySet());
-
-        mergeCase4thru7(operands, splitPoint, given, head);
+     * Conflict case for merge. Writes the head and
+     * given versions of the file (either may be absent)
+     * into the working directory, and stages the result.
+     * @param blobName String
+     * @param headID String blob id in the head, or null
+     * @param givenID String blob id in the given commit, or null
+     */
+    void mergeConflictCase(String blobName, String headID,
+                           String givenID) {
+        byte[] headContent = headID == null ? new byte[0]
+                : readBlob(headID).getContent();
+        byte[] givenContent = givenID == null ? new byte[0]
+                : readBlob(givenID).getContent();
+        byte[] merged = conflictContents(headContent, givenContent);
+        Utils.writeContents(new File("."
+                + java.io.File.separator + blobName), merged);
+
+        Blob aBlob = new Blob(blobName, merged);
+        Utils.writeObjectIfAbsent(new File(blobs
+                + java.io.File.separator + aBlob.getID()), aBlob);
+        repo.stage(aBlob.getName(), aBlob.getID());
     }
 
     /**
-     * Cases 4 through 7 of merge.
+     * Returns the contents of a conflicted file, with
+     * HEADCONTENT and GIVENCONTENT between conflict markers,
+     * copied into a single array of the exact size.
+     * @param headContent byte[]
+     * @param givenContent byte[]
+     * @return byte[]
+     */
+    static byte[] conflictContents(byte[] headContent,
+                                   byte[] givenContent) {
+        byte[][] parts = {CONFLICT_HEAD, headContent, CONFLICT_SEPARATOR,
+                          givenContent, CONFLICT_END};
+        int size = 0;
+        for (byte[] part : parts) {
+            size += part.length;
+        }
+        byte[] result = new byte[size];
+        int pos = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, pos, part.length);
+            pos += part.length;
+        }
+        return result;
+    }
+
+    /**
+     * Shows line differences between two of the working
+     * directory, the staging area and a commit:
+     * diff (stage vs. WD), diff --staged [COMMIT] (the head
+     * commit, or COMMIT, vs. stage), diff COMMIT (commit vs.
+     * WD) and diff COMMIT1 COMMIT2. Files whose blob ids match are
+     * skipped without reading their contents.
      * @param operands String[]
-     * @param splitPoint Commit
-     * @param given Commit
-     * @param head Commit
-     */
-    void mergeCase4thru7(String[] operands, Commit splitPoint,
-                         Commit given, Commit head) {
-        modifiedInHeadSinceSplit.values().retainAll(
-                modifiedInGivenSinceSplit.values());
-        noConflict.addAll(
-                modifiedInHeadSinceSplit.keySet());
-
-        headFiles = (HashMap) head.getBlobs().clone();
-        givenFiles = (HashMap) given.getBlobs().clone();
-        splitPointFiles = (HashMap) splitPoint.getBlobs().clone();
-        headFiles.keySet().removeAll(splitPointFiles.keySet());
-        headFiles.keySet().removeAll(givenFiles.keySet());
-        noConflict.addAll(headFiles.keySet());
-
-        headFiles = (HashMap) head.getBlobs().clone();
-        givenFiles = (HashMap) given.getBlobs().clone();
-        splitPointFiles = (HashMap) splitPoint.getBlobs().clone();
-        givenFiles.keySet().removeAll(splitPointFiles.keySet());
-        givenFiles.keySet().removeAll(headFiles.keySet());
-        for (String blobName : givenFiles.keySet()) {
-            noConflict.add(blobName);
-            Blob aBlob = Utils.readObject(new File(blobs
-                    + java.io.File.separator
-                    + givenFiles.get(blobName)), Blob.class);
-            Utils.writeContents(new File("."
-                    + java.io.File.separator
-                    + aBlob.getName()), aBlob.getContent());
-            Utils.writeObject(new File(stage
-                    + java.io.File.separator + aBlob.getID()), aBlob);
+     */
+    void diffCommand(String[] operands) {
+        if (!hidden.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            System.exit(0);
+        }
+        if (operands == null) {
+            operands = new String[0];
+        }
+        HashMap<String, String> from = null;
+        HashMap<String, String> to = null;
+        if (operands.length == 0) {
+            from = stagedView();
+        } else if (operands.length == 1 && operands[0].equals("--staged")) {
+            from = readHead().getBlobs();
+            to = stagedView();
+        } else if (operands.length == 1) {
+            from = resolveCommit(operands[0]).getBlobs();
+        } else if (operands.length == 2 && operands[0].equals("--staged")) {
+            from = resolveCommit(operands[1]).getBlobs();
+            to = stagedView();
+        } else if (operands.length == 2) {
+            from = resolveCommit(operands[0]).getBlobs();
+            to = resolveCommit(operands[1]).getBlobs();
+        } else {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
         }
 
-        headFiles = (HashMap) head.getBlobs().clone();
-        givenFiles = (HashMap) given.getBlobs().clone();
-        splitPointFiles =
-                (HashMap) splitPoint.getBlobs().clone();
-        splitPointFiles.keySet().removeAll(
-                givenFiles.keySet());
-        headFiles.values().retainAll(
-                splitPointFiles.values());
-        notModifiedInHeadSinceSplit = headFiles;
-        splitPointFiles.values().retainAll(
-                notModifiedInHeadSinceSplit.values());
-        for (String blobName : splitPointFiles.keySet()) {
-            noConflict.add(blobName);
-            Blob aBlob = Utils.readObject(new File(
-                            blobs + java.io.File.separator
-                                    + splitPointFiles.get(blobName)),
-                    Blob.class);
-            new File("." + java.io.File.separator
-                    + aBlob.getName()).delete();
-            blobsToUnstage.add(aBlob.getName());
+        TreeSet<String> names = new TreeSet<>(from.keySet());
+        if (to != null) {
+            names.addAll(to.keySet());
         }
+        PrintStream out = openOutput();
+        for (String name : names) {
+            String oldID = from.get(name);
+            String[] newLines;
+            if (to != null) {
+                String newID = to.get(name);
+                if (newID != null && newID.equals(oldID)) {
+                    continue;
+                }
+                newLines = newID == null ? null
+                        : Diff.diffLines(blobContent(newID));
+            } else {
+                File file = new File(name);
+                if (!file.isFile()) {
+                    newLines = null;
+                } else {
+                    byte[] content = Utils.readContents(file);
+                    if (oldID != null && oldID.equals(
+                            new Blob(name, content).getID())) {
+                        continue;
+                    }
+                    newLines = Diff.diffLines(content);
+                }
+            }
+            String[] oldLines = oldID == null ? null
+                    : Diff.diffLines(blobContent(oldID));
+            Diff.printUnified(out, name, oldLines, newLines);
+        }
+        out.flush();
     }
 
     /**
-     * Conflict case for merge.
+     * Removes commits no branch leads to and blobs no
+     * remaining commit or the staging area uses. Objects
+     * younger than the grace period are kept; with
+     * --prune=SECONDS the grace period is SECONDS, and with
+     * --prune=now there is none. A grace period too long
+     * to represent is rejected as an incorrect operand.
      * @param operands String[]
-     * @param splitPoint Commit
-     * @param given Commit
-     * @param head Commit
-     */
-    void mergeConflictCase(String[] operands, Commit splitPoint,
-                           Commit given, Commit head) {
-        headFiles = (HashMap) head.getBlobs().clone();
-        givenFiles = (HashMap) given.getBlobs().clone();
-
-        HashSet<String> conflictFiles = new HashSet<String>();
-        conflictFiles.addAll(headFiles.keySet());
-        conflictFiles.addAll(givenFiles.keySet());
-        conflictFiles.removeAll(noConflict);
-
-        for (String blobName : conflictFiles) {
-            Blob headBlob = Utils.readObject(new File(
-                    blobs + java.io.File.separator
-                            + headFiles.get(blobName)), Blob.class);
-            String strGivenBlobContent;
-            if (givenFiles.get(blobName) != null) {
-                Blob givenBlob = Utils.readObject(new File(blobs
-                        + java.io.File.separator
-                        + givenFiles.get(blobName)), Blob.class);
-                byte[] givenBlobContent = Utils.readObject(
-                        new File(blobs + java.io.File.separator
-                                + givenFiles.get(blobName)),
-                        Blob.class).getContent();
-                strGivenBlobContent = new String(
-                        givenBlobContent, StandardCharsets.UTF_8);
-            } else {
-                strGivenBlobContent = "";
+     */
+    void gcCommand(String[] operands) {
+        if (!hidden.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            System.exit(0);
+        }
+        long cutoff = System.currentTimeMillis() - GC_GRACE * 1000;
+        if (operands == null) {
+            operands = new String[0];
+        }
+        if (operands.length > 1 || operands.length == 1
+                && !operands[0].matches("--prune=(now|\\d+)")) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        } else if (operands.length == 1) {
+            String value = operands[0].substring("--prune=".length());
+            try {
+                long grace = value.equals("now") ? 0 : Long.parseLong(value);
+                cutoff = Math.subtractExact(System.currentTimeMillis(),
+                        Math.multiplyExact(grace, 1000));
+            } catch (NumberFormatException | ArithmeticException e) {
+                System.out.println("Incorrect operands.");
+                System.exit(0);
             }
-            byte[] headBlobContent = Utils.readObject(new File(
-                            blobs + java.io.File.separator
-                                    + headFiles.get(blobName)),
-                    Blob.class).getContent();
-            String strHeadBlobContent = new String(
-                    headBlobContent, StandardCharsets.UTF_8);
-            Utils.writeContents(new File("."
-                            + java.io.File.separator + blobName),
-                    "<<<<<<< HEAD\n" + strHeadBlobContent
-                            + "=======\n" +  strGivenBlobContent
-                            + ">>>>>>>\n");
+        }
+        Collection<String> roots = repo.branches().values();
+        CommitGraph all = commitGraph();
+        for (String id : Utils.plainFilenamesIn(commits)) {
+            if (!all.contains(id)) {
+                rebuildGraph();
+                all = graph;
+                break;
+            }
+        }
+        int removed = new GarbageCollector(hidden, all, this::readCommit)
+                .collect(roots, repo.staged().values(), cutoff);
+        System.out.printf("Removed %d unreachable objects.%n", removed);
+    }
 
-            Blob aBlob = new Blob(blobName, Utils.serialize(
-                    "<<<<<<< HEAD\n" + headBlobContent
-                            + "=======\n" +  strGivenBlobContent
-                            + ">>>>>>>\n"));
+    /**
+     * Verifies every commit and blob against its id, and
+     * that the branches, HEAD, the staging area and the
+     * commits refer only to objects that exist. Prints each
+     * problem found, then the number of objects checked and
+     * the rate at which they were checked.
+     */
+    void fsckCommand() {
+        if (!hidden.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            System.exit(0);
+        }
+        long start = System.nanoTime();
+        IntegrityCheck check = new IntegrityCheck(hidden);
+        for (String problem : check.run(repo.branches(),
+                repo.currentBranch(), repo.staged().values())) {
+            System.out.println(problem);
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        System.out.printf("Checked %d objects in %.3f s "
+                + "(%.0f objects/s).%n", check.checked(), seconds,
+                check.checked() / seconds);
+    }
 
-            Utils.writeObject(new File(blobs
-                    + java.io.File.separator + aBlob.getID()), aBlob);
-            Utils.writeObject(new File(stage
-                    + java.io.File.separator + aBlob.getID()), aBlob);
+    /**
+     * Shows, for each line of a file in the head commit, the
+     * commit that last changed it: its abbreviated id, its
+     * date, the line number and the line.
+     * @param operands String[]
+     */
+    void blameCommand(String[] operands) {
+        if (!hidden.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            System.exit(0);
         }
+        if (operands == null || operands.length != 1) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+        Commit head = readHead();
+        String blobID = head.getBlobs().get(operands[0]);
+        if (blobID == null) {
+            System.out.println("File does not exist in that commit.");
+            System.exit(0);
+        }
+        CommitGraph all = commitGraph();
+        String[] lines = blobLines(blobID);
+        int[] owners = new Blame(all, this::readCommit, this::blobContent)
+                .run(all.position(head.getID()), operands[0], blobID, lines);
+        PrintStream out = openOutput();
+        for (int i = 0; i < lines.length; i += 1) {
+            out.printf("%s (%s %4d) %s%n",
+                    all.id(owners[i]).substring(0, BLAME_ID),
+                    LocalDateTime.ofEpochSecond(all.time(owners[i]), 0,
+                            ZoneOffset.UTC).format(BLAME_DATE),
+                    i + 1, lines[i]);
+        }
+        out.flush();
+    }
 
-        Utils.writeObject(unstage, blobsToUnstage);
-        mergeCommitCommand(new String[]{"Merged "
-                + operands[0] + " into "
-                + Utils.readObject(headBranch.listFiles()[0],
-                Branch.class).getName()
-                + ".", given.getID()}, conflictFiles);
+    /**
+     * Returns the files tracked by the head commit as
+     * modified by the staging area (name --> blob id).
+     * @return HashMap
+     */
+    HashMap<String, String> stagedView() {
+        HashMap<String, String> view =
+                new HashMap<>(readHead().getBlobs());
+        view.keySet().removeAll(repo.removed());
+        view.putAll(repo.staged());
+        return view;
+    }
+
+    /**
+     * Returns the commit named by a branch name or a
+     * (possibly abbreviated) commit id. Exits if there is
+     * no such commit.
+     * @param name String
+     * @return Commit
+     */
+    Commit resolveCommit(String name) {
+        String id = repo.branch(name) != null ? repo.branch(name) : name;
+        Commit result = null;
+        if (id.length() <= Utils.UID_LENGTH) {
+            result = findCommitWithID(id);
+        }
+        if (result == null) {
+            System.out.println("No commit with that id exists.");
+            System.exit(0);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the lines of the blob with the given id.
+     * @param blobID String
+     * @return String[]
+     */
+    String[] blobLines(String blobID) {
+        return Diff.lines(blobContent(blobID));
+    }
+
+    /**
+     * Returns the contents of the blob with the given id.
+     * @param blobID String
+     * @return byte[]
+     */
+    byte[] blobContent(String blobID) {
+        return readBlob(blobID).getContent();
+    }
+
+    /**
+     * Returns a large buffered stream on standard output,
+     * so that bulk output is not flushed line by line.
+     * Callers must flush it when done.
+     * @return PrintStream
+     */
+    PrintStream openOutput() {
+        return new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER),
+                false);
     }
 
     /**
@@ -1100,60 +1305,137 @@ public class Commands {
      * @return boolean
      */
     boolean inStaged(String fileName) {
-        for (File f : stage.listFiles()) {
-            Blob newBlob = Utils.readObject(f, Blob.class);
-            if (newBlob.getName().equals(fileName)) {
-                return true;
+        return repo.staged().containsKey(fileName);
+    }
+
+    /**
+     * Returns the commit graph, rebuilding it from the
+     * commit objects first if it is missing, does not
+     * include the head commit, or lacks a parent of one of
+     * its commits.
+     * @return CommitGraph
+     */
+    CommitGraph commitGraph() {
+        if (graph == null) {
+            graph = new CommitGraph(graphFile);
+            if (!graph.contains(repo.headID()) || !graph.complete()) {
+                rebuildGraph();
             }
         }
-        return false;
+        return graph;
     }
 
     /**
-     * Finds commit with given parent.
-     * @param parentID String
-     * @return Commit
+     * Adds COMM, whose object is written and whose first
+     * parent PARENT is the head commit, to the commit graph.
+     * The graph is rebuilt instead if it lacks one of COMM's
+     * parents. Must be called before the head moves to COMM.
+     * @param comm Commit
+     * @param parent Commit
      */
-    Commit findCommitWithParent(String parentID) {
-        for (int i = 0; i < commits.listFiles().length; i++) {
-            if (commits.listFiles()[i].isDirectory()) {
-                if (Utils.readObject(headCommit.listFiles()[0],
-                        Commit.class).getID().equals(parentID)) {
-                    return Utils.readObject(
-                            headCommit.listFiles()[0], Commit.class);
-                }
+    void addToGraph(Commit comm, Commit parent) {
+        CommitGraph all = commitGraph();
+        if (!all.contains(comm.getID())) {
+            if (all.contains(comm.getParent())
+                    && (comm.getParent2().isEmpty()
+                        || all.contains(comm.getParent2()))) {
+                CommitGraph.append(graphFile, comm, parent);
             } else {
-                if (Utils.readObject(commits.listFiles()[i],
-                        Commit.class).getID().equals(parentID)) {
-                    return Utils.readObject(
-                            commits.listFiles()[i], Commit.class);
-                }
+                rebuildGraph();
             }
         }
-        return null;
+        graph = null;
+    }
+
+    /**
+     * Rebuilds the commit graph from all commit objects.
+     */
+    void rebuildGraph() {
+        List<Commit> all = new ArrayList<>();
+        for (File f : commitFiles()) {
+            all.add(Utils.readObject(f, Commit.class));
+        }
+        CommitGraph.rebuild(graphFile, all);
+        graph = new CommitGraph(graphFile);
     }
 
     /**
-     * Finds commit with given SHA id.
+     * Returns the commit message index, building it from
+     * the commit graph first if it does not exist yet.
+     * @return MessageIndex
+     */
+    MessageIndex messageIndex() {
+        MessageIndex index = new MessageIndex(messages);
+        if (!index.exists()) {
+            CommitGraph all = commitGraph();
+            List<Commit> comms = new ArrayList<>();
+            for (int i = 0; i < all.size(); i += 1) {
+                comms.add(readCommit(all.id(i)));
+            }
+            index.build(comms);
+        }
+        return index;
+    }
+
+    /**
+     * Reads the commit with the given full SHA id.
      * @param commitID String
+     * @return Commit, or null if there is none
+     */
+    Commit readCommit(String commitID) {
+        File file = new File(commits + java.io.File.separator + commitID);
+        if (!file.isFile()) {
+            return null;
+        }
+        return objects.read(file, Commit.class);
+    }
+
+    /**
+     * Returns the head commit.
      * @return Commit
      */
+    Commit readHead() {
+        return readCommit(repo.headID());
+    }
+
+    /**
+     * Returns the files of all commits.
+     * @return List
+     */
+    List<File> commitFiles() {
+        ArrayList<File> files = new ArrayList<>();
+        for (String id : Utils.plainFilenamesIn(commits)) {
+            files.add(new File(commits + java.io.File.separator + id));
+        }
+        return files;
+    }
+
+    /**
+     * Returns the blob with the given id.
+     * @param blobID String
+     * @return Blob
+     */
+    Blob readBlob(String blobID) {
+        return objects.read(new File(blobs
+                + java.io.File.separator + blobID), Blob.class);
+    }
+
+    /**
+     * Finds commit with given SHA id, which may be
+     * abbreviated. Commits are stored under their ids, so
+     * the id is matched against file names and only the
+     * commit found is read.
+     * @param commitID String
+     * @return Commit, or null if there is none
+     */
     Commit findCommitWithID(String commitID) {
-        for (int i = 0; i < commits.listFiles().length; i++) {
-            if (commits.listFiles()[i].isDirectory()) {
-                if (Utils.readObject(headCommit.listFiles()[0],
-                        Commit.class).getID().substring(0,
-                        commitID.length()).equals(commitID)) {
-                    return (Utils.readObject(
-                            headCommit.listFiles()[0], Commit.class));
-                }
-            } else {
-                if (Utils.readObject(commits.listFiles()[i],
-                        Commit.class).getID().substring(0,
-                        commitID.length()).equals(commitID)) {
-                    return Utils.readObject(
-                            commits.listFiles()[i], Commit.class);
-                }
+        if (commitID.length() == Utils.UID_LENGTH
+                && commitID.matches("[0-9a-f]+")) {
+            return readCommit(commitID);
+        }
+        for (String id : Utils.plainFilenamesIn(commits)) {
+            if (id.startsWith(commitID)) {
+                return readCommit(id);
             }
         }
         return null;
@@ -1170,14 +1452,11 @@ public class Commands {
      * @return boolean
      */
     boolean isTrackedGivenBranch(String branchName) {
-        Commit head = Utils.readObject(
-                headCommit.listFiles()[0], Commit.class);
+        Commit head = readHead();
         HashMap<String, String> headBlobs = head.getBlobs();
-        branchTracker = Utils.readObject(branchTrack, HashMap.class);
-        Commit given = Utils.readObject(new File(commits
-                + java.io.File.separator
-                + branchTracker.get(branchName)), Commit.class);
-        HashMap<String, String> givenBlobs = given.getBlobs();
+        Commit given = readCommit(repo.branch(branchName));
+        HashMap<String, String> givenBlobs =
+                new HashMap<>(given.getBlobs());
         if (headBlobs.keySet().containsAll(givenBlobs.keySet())) {
             return true;
         } else {
@@ -1202,10 +1481,8 @@ public class Commands {
      * @param comm Commit
      */
     void removeFromWDGivenBranch(String branchName, Commit comm) {
-        Commit head = Utils.readObject(
-                headCommit.listFiles()[0], Commit.class);
-        HashMap<String, String> headBlobs = head.getBlobs();
-        branchTracker = Utils.readObject(branchTrack, HashMap.class);
+        Commit head = readHead();
+        HashMap<String, String> headBlobs = new HashMap<>(head.getBlobs());
         Commit given = comm;
         HashMap<String, String> givenBlobs = given.getBlobs();
 
@@ -1227,12 +1504,12 @@ public class Commands {
      * @return boolean
      */
     boolean isTrackedGivenCommit(String commitID) {
-        Commit head = Utils.readObject(
-                headCommit.listFiles()[0], Commit.class);
+        Commit head = readHead();
         HashMap<String, String> headBlobs = head.getBlobs();
 
         Commit given = findCommitWithID(commitID);
-        HashMap<String, String> givenBlobs = given.getBlobs();
+        HashMap<String, String> givenBlobs =
+                new HashMap<>(given.getBlobs());
         if (headBlobs.keySet().containsAll(givenBlobs.keySet())) {
             return true;
         } else {
@@ -1254,9 +1531,8 @@ public class Commands {
      * @param commitID String
      */
     void removeFromWDGivenCommit(String commitID) {
-        Commit head = Utils.readObject(
-                headCommit.listFiles()[0], Commit.class);
-        HashMap<String, String> headBlobs = head.getBlobs();
+        Commit head = readHead();
+        HashMap<String, String> headBlobs = new HashMap<>(head.getBlobs());
 
         Commit given = findCommitWithID(commitID);
         HashMap<String, String> givenBlobs = given.getBlobs();
@@ -1272,176 +1548,205 @@ public class Commands {
     }
 
     /**
-     * Finds all the ancestors of the
-     * given commit.
-     * @param comm Commit
-     * @return HashSet (set of SHA id's of ancestor commits)
-     */
-    HashSet<String> findAncestors(Commit comm) {
-        Commit curr = comm;
-        HashSet<String> ancestors = new HashSet<>();
-        while (true) {
-            ancestors.add(curr.getID());
-            if (findCommitWithParent(curr.getParent()) == null) {
-                return ancestors;
-            }
-            curr = findCommitWithParent(curr.getParent());
-        }
-    }
+     * Marker opening the head's side of a merge conflict.
+     */
+    static final byte[] CONFLICT_HEAD =
+            "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
 
     /**
-     * A given command.
+     * Marker between the two sides of a merge conflict.
      */
-    private String _command;
+    static final byte[] CONFLICT_SEPARATOR =
+            "=======\n".getBytes(StandardCharsets.UTF_8);
 
     /**
-     * Operands.
+     * Marker closing a merge conflict.
      */
-    private String[] _operands;
+    static final byte[] CONFLICT_END =
+            ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
 
     /**
-     * Path of Gitlet repository.
+     * Format of commit dates in log output.
      */
-    private File hidden = new File(".gitlet"
-            + java.io.File.separator);
+    static final DateTimeFormatter LOG_DATE =
+            DateTimeFormatter.ofPattern("E MMM d HH:mm:ss YYYY");
 
     /**
-     * Path of commits subdirectory
-     * in Gitlet repository.
+     * Format of commit dates in blame output.
      */
-    private File commits = new File(hidden
-            + java.io.File.separator + "commits"
-            + java.io.File.separator);
+    static final DateTimeFormatter BLAME_DATE =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     /**
-     * Path of headCommit subdirectory
-     * in Gitlet repository.
+     * Number of commit id digits shown by blame.
      */
-    private File headCommit = new File(commits
-            + java.io.File.separator + "head"
-            + java.io.File.separator);
+    static final int BLAME_ID = 8;
 
     /**
-     * Path of branches subdirectory
-     * in Gitlet repository.
+     * Maximum total size in bytes of the objects kept
+     * in the object cache.
      */
-    private File branches = new File(hidden
-            + java.io.File.separator + "branches"
-            + java.io.File.separator);
+    static final long OBJECT_CACHE_SIZE = 64L << 20;
 
     /**
-     * Path of headBranch subdirectory
-     * in Gitlet repository.
+     * Environment variable choosing when repository files
+     * are forced to disk: "off", "batch" (the default,
+     * also used for unknown values: all new files at once,
+     * before refs are updated) or "always" (each file as it
+     * is written).
      */
-    private File headBranch = new File(branches
-            + java.io.File.separator + "head"
-            + java.io.File.separator);
+    static final String FSYNC = "GITLET_FSYNC";
 
     /**
-     * Path of blobs directory
-     * in Gitlet repository.
+     * Environment variable choosing which commits and
+     * blobs read from disk are checked against their ids:
+     * "off", "sampled" (the default, also used for unknown
+     * values: a random one in ObjectCache.SAMPLE_RATE) or
+     * "always".
      */
-    private File blobs = new File(hidden
-            + java.io.File.separator + "blobs"
-            + java.io.File.separator);
+    static final String VERIFY = "GITLET_VERIFY";
 
     /**
-     * Path of stage directory
-     * in Gitlet repository.
+     * Environment variable that, when set, makes each
+     * command report its object cache counters on
+     * standard error.
      */
-    private File stage = new File(hidden
-            + java.io.File.separator + "stage"
-            + java.io.File.separator);
+    static final String CACHE_STATS = "GITLET_CACHE_STATS";
 
     /**
-     * Path of unstage file
-     * in Gitlet repository.
+     * Commands that only read the repository, and so
+     * take its lock shared. The only files they write are
+     * the commit graph and message index, when those are
+     * missing or out of date, and both are rebuilt whole and
+     * renamed into place, so readers racing to rebuild them
+     * leave one complete copy.
      */
-    private File unstage = new File(hidden
-            + java.io.File.separator + "unstage");
+    static final Set<String> READERS = Set.of("log", "global-log",
+            "find", "status", "diff", "blame", "fsck");
 
     /**
-     * HashSet which contains names
-     * of blobs which need to be unstaged
-     * is hashed here.
+     * Environment variable giving the longest time, in
+     * milliseconds, a command waits for the repository lock.
+     * Values that are not non-negative whole numbers are
+     * ignored.
      */
-    private HashSet<String> blobsToUnstage =
-            new HashSet<String>();
+    static final String LOCK_TIMEOUT = "GITLET_LOCK_TIMEOUT";
 
     /**
-     * Path of branchTracker file
-     * in Gitlet repository.
+     * Default time, in milliseconds, a command waits for
+     * the repository lock.
      */
-    private File branchTrack = new File(hidden
-            + java.io.File.separator + "branchTracker");
+    static final long LOCK_WAIT = 10000;
 
     /**
-     * HashMap containing
-     * name of branch --> SHA id of
-     * commit object branch points to.
+     * Environment variable that, when set, makes each
+     * command report how long it waited for the repository
+     * lock on standard error.
      */
-    private HashMap<String, String>
-            branchTracker = new HashMap<>();
+    static final String LOCK_STATS = "GITLET_LOCK_STATS";
 
     /**
-     * Path of initial file
+     * Seconds an unreachable object is kept by gc after
+     * it was written, unless gc is told otherwise.
+     */
+    static final long GC_GRACE = 3600;
+
+    /**
+     * Number of commits global-log reads in parallel
+     * before printing them.
+     */
+    static final int LOG_BATCH = 1024;
+
+    /**
+     * Size in bytes of the buffer used for bulk output.
+     */
+    static final int OUTPUT_BUFFER = 1 << 16;
+
+    /**
+     * A given command.
+     */
+    private String _command;
+
+    /**
+     * Operands.
+     */
+    private String[] _operands;
+
+    /**
+     * Blob ids of the files given to add, stored before
+     * the repository was locked.
+     */
+    private String[] _added;
+
+    /**
+     * Path of Gitlet repository.
+     */
+    private File hidden = new File(".gitlet"
+            + java.io.File.separator);
+
+    /**
+     * Path of commits subdirectory
      * in Gitlet repository.
      */
-    private File initialCommit = new File(hidden
-            + java.io.File.separator + "initial");
+    private File commits = new File(hidden
+            + java.io.File.separator + "commits"
+            + java.io.File.separator);
 
     /**
-     * The initial Commit.
+     * Path of blobs directory
+     * in Gitlet repository.
      */
-    private Commit initial;
+    private File blobs = new File(hidden
+            + java.io.File.separator + "blobs"
+            + java.io.File.separator);
 
     /**
-     * Set of files that don't
-     * have any conflict.
+     * Path of initial file
+     * in Gitlet repository.
      */
-    private ArrayList<String> noConflict = new ArrayList<String>();
+    private File initialCommit = new File(hidden
+            + java.io.File.separator + "initial");
 
     /**
-     * Blobs of split point.
+     * The initial Commit.
      */
-    private HashMap<String, String> splitPointFiles = new HashMap<>();
+    private Commit initial;
 
     /**
-     * Blobs of current head.
+     * Path of commit-graph file
+     * in Gitlet repository.
      */
-    private HashMap<String, String> headFiles = new HashMap<>();
+    private File graphFile = new File(hidden
+            + java.io.File.separator + "commit-graph");
 
     /**
-     * Blobs of given branch's commit.
+     * Commits and blobs read so far by this command.
      */
-    private HashMap<String, String> givenFiles = new HashMap<>();
+    private ObjectCache objects = new ObjectCache(OBJECT_CACHE_SIZE);
 
     /**
-     * Set of files that haven't been
-     * modified in given commit since split point.
+     * Branches, HEAD, the staging area and the files
+     * staged for removal, read and written through here.
      */
-    private HashMap<String, String>
-            notModifiedInGivenSinceSplit = new HashMap<>();
+    private Repository repo = new Repository(hidden);
 
     /**
-     * Set of files that have been
-     * modified in given commit since split point.
+     * Lock keeping other Gitlet processes from changing
+     * the repository while this command uses it.
      */
-    private HashMap<String, String>
-            modifiedInGivenSinceSplit = new HashMap<>();
+    private RepositoryLock lock = new RepositoryLock(hidden);
 
     /**
-     * Set of files that haven't been
-     * modified in head commit since split.
+     * Path of messages directory
+     * (the commit message index)
+     * in Gitlet repository.
      */
-    private HashMap<String, String>
-            notModifiedInHeadSinceSplit = new HashMap<>();
+    private File messages = new File(hidden
+            + java.io.File.separator + "messages");
 
     /**
-     * Set of files that have been
-     * modified in head commit since split.
+     * The commit graph, once loaded.
      */
-    private HashMap<String, String>
-            modifiedInHeadSinceSplit = new HashMap<>();
+    private CommitGraph graph;
 
 }
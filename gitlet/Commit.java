@@ -1,8 +1,11 @@
 package gitlet;
 
 import java.time.LocalDateTime;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This class represents a Commit object.
@@ -82,6 +85,25 @@ public class Commit implements Serializable {
     }
 
 
+    /**
+     * Reads this commit from IN, sharing a single copy of
+     * each file name and blob id among all the commits read,
+     * since most of them are the same from one commit to the
+     * next.
+     * @param in ObjectInputStream
+     * @throws IOException if IN cannot be read
+     * @throws ClassNotFoundException if IN holds an unknown class
+     */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        HashMap<String, String> blobs = new HashMap<>(_blobs.size() * 2);
+        for (Map.Entry<String, String> e : _blobs.entrySet()) {
+            blobs.put(e.getKey().intern(), e.getValue().intern());
+        }
+        _blobs = blobs;
+    }
+
     /**
      * commit message.
      */
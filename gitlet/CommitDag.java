@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.util.BitSet;
+
+/**
+ * Ancestry queries over the commit graph. Commits are graph
+ * positions, their parents come from the graph's int arrays, and
+ * visited commits are marked in BitSets; the marks and the stack
+ * of commits still to visit are allocated once, so a query
+ * allocates nothing. Since parents always come before their
+ * children in the graph, a search for an ancestor never needs to
+ * look below that ancestor's position, and of two commits one of
+ * which descends from the other, the descendant has the higher
+ * position.
+ * @author Adish Jain
+ */
+class CommitDag {
+
+    /**
+     * Constructor.
+     * @param graph the commit graph
+     */
+    CommitDag(CommitGraph graph) {
+        _graph = graph;
+        _marks = new BitSet(graph.size());
+        _seen = new BitSet(graph.size());
+        _stack = new int[graph.size()];
+    }
+
+    /**
+     * Returns true iff the commit at ANCESTOR is the commit
+     * at POS or one of its ancestors.
+     * @param ancestor int
+     * @param pos int
+     * @return boolean
+     */
+    boolean isAncestor(int ancestor, int pos) {
+        _seen.clear();
+        int top = push(pos, ancestor, _seen, 0);
+        while (top > 0) {
+            int p = _stack[--top];
+            if (p == ancestor) {
+                return true;
+            }
+            top = push(_graph.parent(p), ancestor, _seen, top);
+            top = push(_graph.parent2(p), ancestor, _seen, top);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the position of the best common ancestor of
+     * the commits at A and B: a common ancestor that no other
+     * common ancestor descends from, the latest one if there
+     * are several. Returns -1 if they have none.
+     * @param a int
+     * @param b int
+     * @return int
+     */
+    int mergeBase(int a, int b) {
+        _marks.clear();
+        markReachable(a, _marks);
+        _seen.clear();
+        int best = -1;
+        int top = push(b, 0, _seen, 0);
+        while (top > 0) {
+            int p = _stack[--top];
+            if (_marks.get(p)) {
+                best = Math.max(best, p);
+            } else {
+                top = push(_graph.parent(p), best + 1, _seen, top);
+                top = push(_graph.parent2(p), best + 1, _seen, top);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Marks in MARKS the commit at POS and all of its
+     * ancestors. Commits already marked are taken to have
+     * their ancestors marked too, so that marking from
+     * several commits in turn visits each commit once.
+     * @param pos int
+     * @param marks BitSet
+     */
+    void markReachable(int pos, BitSet marks) {
+        int top = push(pos, 0, marks, 0);
+        while (top > 0) {
+            int p = _stack[--top];
+            top = push(_graph.parent(p), 0, marks, top);
+            top = push(_graph.parent2(p), 0, marks, top);
+        }
+    }
+
+    /**
+     * Pushes POS onto the stack above TOP and marks it in
+     * SEEN, unless it is -1, below LOW or already marked.
+     * Returns the new top of the stack.
+     * @param pos int
+     * @param low int
+     * @param seen BitSet
+     * @param top int
+     * @return int
+     */
+    private int push(int pos, int low, BitSet seen, int top) {
+        if (pos < low || seen.get(pos)) {
+            return top;
+        }
+        seen.set(pos);
+        _stack[top] = pos;
+        return top + 1;
+    }
+
+    /** The commit graph. */
+    private CommitGraph _graph;
+
+    /** Ancestors of the first commit of a merge base query. */
+    private BitSet _marks;
+
+    /** Commits visited by the current query. */
+    private BitSet _seen;
+
+    /** Commits still to visit, bottom first. */
+    private int[] _stack;
+}
@@ -0,0 +1,495 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Index of every commit in the repository, kept in the file
+ * .gitlet/commit-graph. Each commit has one record holding its
+ * id, its parents' ids, its timestamp and a Bloom filter of the
+ * paths it changed relative to its first parent (see
+ * PathFilter). Records are appended when commits are made, so
+ * parents always come before their children. Commits can be
+ * enumerated, their ancestry followed, time ranges searched and
+ * file histories narrowed without reading commit objects. Commits
+ * are held by position, with binary ids looked up in an open
+ * addressing table, so a loaded graph holds no id strings; hex
+ * ids are made only when asked for.
+ * @author Adish Jain
+ */
+class CommitGraph {
+
+    /** Marks the start of a commit-graph file (format 2). */
+    static final int MAGIC = 0x47434732;
+
+    /** Size in bytes of the file header. */
+    static final int HEADER = 4;
+
+    /** Size in bytes of a binary commit id. */
+    static final int ID_BYTES = 20;
+
+    /**
+     * Size in bytes of the fixed part of a commit record,
+     * before its path filter.
+     */
+    static final int RECORD = 3 * ID_BYTES + 8 + 4;
+
+    /**
+     * Position given to a parent that is not in the graph,
+     * as opposed to -1 for no parent.
+     */
+    static final int MISSING = -2;
+
+    /**
+     * Constructor. Reads the graph in FILE; the graph is
+     * empty if FILE is missing or not a commit-graph of the
+     * current format. A partly written last record is ignored.
+     * @param file File
+     */
+    CommitGraph(File file) {
+        ByteBuffer buf = ByteBuffer.wrap(file.isFile()
+                ? Utils.readContents(file) : new byte[0]);
+        if (buf.remaining() < HEADER || buf.getInt() != MAGIC) {
+            buf.position(buf.limit());
+        }
+        int capacity = 1 + buf.remaining() / RECORD;
+        _ids = new byte[capacity * ID_BYTES];
+        _parent = new int[capacity];
+        _parent2 = new int[capacity];
+        _time = new long[capacity];
+        _filters = new long[capacity][];
+        _slots = new int[Integer.highestOneBit(2 * capacity) * 2];
+        byte[] record = new byte[RECORD];
+        int count = 0;
+        while (buf.remaining() >= RECORD) {
+            buf.get(record);
+            int words = ByteBuffer.wrap(record, RECORD - 4, 4).getInt();
+            if (words > 0 && buf.remaining() < words * Long.BYTES) {
+                break;
+            }
+            System.arraycopy(record, 0, _ids, count * ID_BYTES, ID_BYTES);
+            index(count);
+            _parent[count] = position(record, ID_BYTES);
+            _parent2[count] = position(record, 2 * ID_BYTES);
+            _time[count] = ByteBuffer.wrap(record, 3 * ID_BYTES, 8).getLong();
+            if (words >= 0) {
+                _filters[count] = new long[words];
+                buf.asLongBuffer().get(_filters[count]);
+                buf.position(buf.position() + words * Long.BYTES);
+            }
+            count += 1;
+        }
+        _size = count;
+    }
+
+    /**
+     * Returns true iff the parents of every commit in the
+     * graph are in the graph too.
+     * @return boolean
+     */
+    boolean complete() {
+        return _complete;
+    }
+
+    /**
+     * Returns the number of commits in the graph.
+     * @return int
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Returns the position of the commit with id COMMITID,
+     * or -1 if it is not in the graph.
+     * @param commitID String
+     * @return int
+     */
+    int position(String commitID) {
+        if (commitID == null || commitID.length() != 2 * ID_BYTES) {
+            return -1;
+        }
+        return find(Utils.fromHex(commitID), 0);
+    }
+
+    /**
+     * Returns true iff COMMITID is in the graph.
+     * @param commitID String
+     * @return boolean
+     */
+    boolean contains(String commitID) {
+        return position(commitID) != -1;
+    }
+
+    /**
+     * Returns the id of the commit at position POS.
+     * @param pos int
+     * @return String
+     */
+    String id(int pos) {
+        return Utils.toHex(_ids, pos * ID_BYTES, ID_BYTES);
+    }
+
+    /**
+     * Returns the position of the first parent of the
+     * commit at POS, -1 if it has none, or MISSING if it
+     * is not in the graph.
+     * @param pos int
+     * @return int
+     */
+    int parent(int pos) {
+        return _parent[pos];
+    }
+
+    /**
+     * Returns the position of the second parent of the
+     * commit at POS, -1 if it has none, or MISSING if it
+     * is not in the graph.
+     * @param pos int
+     * @return int
+     */
+    int parent2(int pos) {
+        return _parent2[pos];
+    }
+
+    /**
+     * Returns the timestamp of the commit at POS, in
+     * seconds since the epoch.
+     * @param pos int
+     * @return long
+     */
+    long time(int pos) {
+        return _time[pos];
+    }
+
+    /**
+     * Returns false if the commit at POS certainly did not
+     * change PATH relative to its first parent.
+     * @param pos int
+     * @param path String
+     * @return boolean
+     */
+    boolean mightChange(int pos, String path) {
+        return PathFilter.mightContain(_filters[pos], path);
+    }
+
+    /**
+     * Returns the positions of all commits whose timestamps
+     * lie in [SINCE, UNTIL] (epoch seconds), oldest first.
+     * Found by binary search in the time-ordered index.
+     * @param since long
+     * @param until long
+     * @return int[]
+     */
+    int[] between(long since, long until) {
+        int[] order = timeOrder();
+        int lo = lowerBound(order, since);
+        int hi = until == Long.MAX_VALUE
+                ? order.length : lowerBound(order, until + 1);
+        return Arrays.copyOfRange(order, lo, Math.max(lo, hi));
+    }
+
+    /**
+     * Returns the positions of all commits sorted by
+     * timestamp. Commits are usually appended in time
+     * order, in which case no sorting is needed.
+     * @return int[]
+     */
+    private int[] timeOrder() {
+        if (_timeOrder == null) {
+            boolean sorted = true;
+            for (int i = 1; i < _size && sorted; i += 1) {
+                sorted = _time[i - 1] <= _time[i];
+            }
+            if (sorted) {
+                _timeOrder = new int[_size];
+                for (int i = 0; i < _timeOrder.length; i += 1) {
+                    _timeOrder[i] = i;
+                }
+            } else {
+                _timeOrder = IntStream
+                        .range(0, _size).boxed()
+                        .sorted(Comparator.comparingLong(i -> _time[i]))
+                        .mapToInt(Integer::intValue).toArray();
+            }
+        }
+        return _timeOrder;
+    }
+
+    /**
+     * Returns the first index in ORDER whose commit's time
+     * is at least TIME.
+     * @param order int[] positions sorted by time
+     * @param time long
+     * @return int
+     */
+    private int lowerBound(int[] order, long time) {
+        int lo = 0, hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_time[order[mid]] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Appends the record of COMM, whose first parent is
+     * PARENT (null for the initial commit), to the
+     * commit-graph FILE, creating the file if needed.
+     * COMM's parents must already be in the graph.
+     * @param file File
+     * @param comm Commit
+     * @param parent Commit
+     */
+    static void append(File file, Commit comm, Commit parent) {
+        HashMap<String, Commit> parents = new HashMap<>();
+        if (parent != null) {
+            parents.put(parent.getID(), parent);
+        }
+        boolean header = !file.isFile();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(encode(Arrays.asList(comm), parents, header));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Replaces FILE with a graph of COMMS, which may be in
+     * any order. The new graph is written whole and renamed
+     * over FILE, so readers see the old graph or the new.
+     * @param file File
+     * @param comms List of all commits
+     */
+    static void rebuild(File file, List<Commit> comms) {
+        HashMap<String, Commit> byID = new HashMap<>();
+        for (Commit c : comms) {
+            byID.put(c.getID(), c);
+        }
+        ArrayList<Commit> ordered = new ArrayList<>();
+        HashSet<String> done = new HashSet<>();
+        for (Commit c : comms) {
+            ArrayList<Commit> stack = new ArrayList<>();
+            stack.add(c);
+            while (!stack.isEmpty()) {
+                Commit top = stack.get(stack.size() - 1);
+                if (done.contains(top.getID())) {
+                    stack.remove(stack.size() - 1);
+                    continue;
+                }
+                Commit p1 = byID.get(top.getParent()),
+                        p2 = byID.get(top.getParent2());
+                if (p1 != null && !done.contains(p1.getID())) {
+                    stack.add(p1);
+                } else if (p2 != null && !done.contains(p2.getID())) {
+                    stack.add(p2);
+                } else {
+                    done.add(top.getID());
+                    ordered.add(top);
+                    stack.remove(stack.size() - 1);
+                }
+            }
+        }
+        Utils.writeContents(file, encode(ordered, byID, true));
+    }
+
+    /**
+     * Returns the paths whose blobs differ between COMM and
+     * PARENT (null for no parent).
+     * @param comm Commit
+     * @param parent Commit
+     * @return List
+     */
+    static List<String> changedPaths(Commit comm, Commit parent) {
+        Map<String, String> now = comm.getBlobs();
+        Map<String, String> before = parent == null
+                ? new HashMap<>() : parent.getBlobs();
+        ArrayList<String> result = new ArrayList<>();
+        for (Map.Entry<String, String> e : now.entrySet()) {
+            if (!e.getValue().equals(before.get(e.getKey()))) {
+                result.add(e.getKey());
+            }
+        }
+        for (String path : before.keySet()) {
+            if (!now.containsKey(path)) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the records of COMMS, preceded by the file
+     * header if HEADER. PARENTS maps ids to the first parents
+     * of COMMS.
+     * @param comms List
+     * @param parents Map
+     * @param header boolean
+     * @return byte[]
+     */
+    private static byte[] encode(List<Commit> comms,
+                                 Map<String, Commit> parents,
+                                 boolean header) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (header) {
+                out.writeInt(MAGIC);
+            }
+            for (Commit c : comms) {
+                out.write(Utils.fromHex(c.getID()));
+                out.write(binaryID(c.getParent()));
+                out.write(binaryID(c.getParent2()));
+                out.writeLong(
+                        c.getTimeStamp().toEpochSecond(ZoneOffset.UTC));
+                long[] filter = PathFilter.build(
+                        changedPaths(c, parents.get(c.getParent())));
+                if (filter == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(filter.length);
+                    for (long word : filter) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the binary form of COMMITID, or all zeros if
+     * it is empty (no parent).
+     * @param commitID String
+     * @return byte[]
+     */
+    private static byte[] binaryID(String commitID) {
+        if (commitID == null || commitID.isEmpty()) {
+            return new byte[ID_BYTES];
+        }
+        return Utils.fromHex(commitID);
+    }
+
+    /**
+     * Returns the position of the commit whose binary id is
+     * at OFFSET in RECORD, -1 for a null id, or MISSING if
+     * it is not in the graph, which is then not complete.
+     * @param record byte[]
+     * @param offset int
+     * @return int
+     */
+    private int position(byte[] record, int offset) {
+        for (int i = offset; i < offset + ID_BYTES; i += 1) {
+            if (record[i] != 0) {
+                int pos = find(record, offset);
+                if (pos == -1) {
+                    _complete = false;
+                    return MISSING;
+                }
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Enters the commit at POS in the id table, in place of
+     * any earlier record of the same commit.
+     * @param pos int
+     */
+    private void index(int pos) {
+        int mask = _slots.length - 1;
+        for (int i = slot(_ids, pos * ID_BYTES); ; i = (i + 1) & mask) {
+            if (_slots[i] == 0 || Arrays.equals(
+                    _ids, (_slots[i] - 1) * ID_BYTES, _slots[i] * ID_BYTES,
+                    _ids, pos * ID_BYTES, (pos + 1) * ID_BYTES)) {
+                _slots[i] = pos + 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the commit whose binary id is
+     * at OFFSET in ID, or -1 if it is not in the graph.
+     * @param id byte[]
+     * @param offset int
+     * @return int
+     */
+    private int find(byte[] id, int offset) {
+        int mask = _slots.length - 1;
+        for (int i = slot(id, offset); ; i = (i + 1) & mask) {
+            int pos = _slots[i] - 1;
+            if (pos == -1 || Arrays.equals(
+                    _ids, pos * ID_BYTES, (pos + 1) * ID_BYTES,
+                    id, offset, offset + ID_BYTES)) {
+                return pos;
+            }
+        }
+    }
+
+    /**
+     * Returns the first id table slot to try for the
+     * binary id at OFFSET in ID. Ids are SHA-1 hashes, so
+     * their leading bytes are already evenly spread.
+     * @param id byte[]
+     * @param offset int
+     * @return int
+     */
+    private int slot(byte[] id, int offset) {
+        return ByteBuffer.wrap(id, offset, 4).getInt() & (_slots.length - 1);
+    }
+
+    /** Binary ids of all commits, ID_BYTES each. */
+    private byte[] _ids;
+
+    /** Position of each commit's first parent, or -1. */
+    private int[] _parent;
+
+    /** Position of each commit's second parent, or -1. */
+    private int[] _parent2;
+
+    /** Timestamp of each commit, in epoch seconds. */
+    private long[] _time;
+
+    /**
+     * Changed-path filter of each commit, or null if the
+     * commit changed too many paths to have one.
+     */
+    private long[][] _filters;
+
+    /** Number of commits. */
+    private int _size;
+
+    /** True iff no commit has a parent missing from the graph. */
+    private boolean _complete = true;
+
+    /** Positions sorted by timestamp, computed when needed. */
+    private int[] _timeOrder;
+
+    /**
+     * Open addressing table of commits by binary id: each
+     * slot holds a position plus one, or 0 if it is empty.
+     * Its size is a power of two, at least twice the number
+     * of commits.
+     */
+    private int[] _slots;
+}
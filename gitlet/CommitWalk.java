@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Iterates over the first-parent history of a commit. While the
+ * caller handles one commit, its parent is already being read on
+ * a background thread.
+ * @author Adish Jain
+ */
+class CommitWalk implements Iterator<Commit> {
+
+    /**
+     * Reads commits by id.
+     */
+    interface Loader {
+        /**
+         * Returns the commit with id COMMITID, or null if
+         * there is none.
+         * @param commitID String
+         * @return Commit
+         */
+        Commit load(String commitID);
+    }
+
+    /**
+     * Constructor.
+     * @param start first commit returned
+     * @param loader reads the parents of START
+     */
+    CommitWalk(Commit start, Loader loader) {
+        _loader = loader;
+        _ahead = CompletableFuture.completedFuture(start);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return _ahead != null && await(_ahead) != null;
+    }
+
+    @Override
+    public Commit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Commit result = await(_ahead);
+        String parent = result.getParent();
+        if (parent.isEmpty()) {
+            _ahead = null;
+        } else {
+            _ahead = CompletableFuture.supplyAsync(
+                () -> _loader.load(parent), PREFETCHER);
+        }
+        return result;
+    }
+
+    /**
+     * Skips over the next N commits, or as many as there are.
+     * @param n int
+     */
+    void skip(int n) {
+        for (int i = 0; i < n && hasNext(); i += 1) {
+            next();
+        }
+    }
+
+    /**
+     * Waits for and returns the result of FUTURE. If reading
+     * the commit failed, the exception it failed with is
+     * thrown here.
+     * @param future CompletableFuture
+     * @return Commit
+     */
+    private static Commit await(CompletableFuture<Commit> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Background thread reading commits ahead of the walk. */
+    private static final ExecutorService PREFETCHER =
+        Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "commit-prefetch");
+            t.setDaemon(true);
+            return t;
+        });
+
+    /** Reads commits. */
+    private Loader _loader;
+
+    /** The next commit to return, possibly still being read. */
+    private CompletableFuture<Commit> _ahead;
+}
@@ -0,0 +1,366 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Line-based diff engine. Uses Myers' O(ND) algorithm with the
+ * linear-space (middle snake) refinement, and prints the result
+ * as a unified diff.
+ * @author Adish Jain
+ */
+class Diff {
+
+    /** Number of context lines printed around each hunk. */
+    static final int CONTEXT = 3;
+
+    /** The lines of an empty or missing file. */
+    static final String[] NO_LINES = new String[0];
+
+    /**
+     * Line printed after the last line of a file that does
+     * not end with a newline.
+     */
+    static final String NO_NEWLINE = "\\ No newline at end of file";
+
+    /**
+     * A single edit: lines [beginA, endA) of the old
+     * sequence are replaced by lines [beginB, endB) of
+     * the new sequence.
+     */
+    static class Edit {
+
+        /**
+         * Constructor.
+         * @param beginA int
+         * @param endA int
+         * @param beginB int
+         * @param endB int
+         */
+        Edit(int beginA, int endA, int beginB, int endB) {
+            _beginA = beginA;
+            _endA = endA;
+            _beginB = beginB;
+            _endB = endB;
+        }
+
+        /**
+         * Start of the edit in the old sequence.
+         * @return int
+         */
+        int beginA() {
+            return _beginA;
+        }
+
+        /**
+         * End (exclusive) of the edit in the old sequence.
+         * @return int
+         */
+        int endA() {
+            return _endA;
+        }
+
+        /**
+         * Start of the edit in the new sequence.
+         * @return int
+         */
+        int beginB() {
+            return _beginB;
+        }
+
+        /**
+         * End (exclusive) of the edit in the new sequence.
+         * @return int
+         */
+        int endB() {
+            return _endB;
+        }
+
+        /** Start in old sequence. */
+        private int _beginA;
+
+        /** End in old sequence. */
+        private int _endA;
+
+        /** Start in new sequence. */
+        private int _beginB;
+
+        /** End in new sequence. */
+        private int _endB;
+    }
+
+    /**
+     * Constructor. Lines are mapped to integer codes up
+     * front so that the inner loops compare ints only.
+     * @param a String[] old lines
+     * @param b String[] new lines
+     */
+    Diff(String[] a, String[] b) {
+        HashMap<String, Integer> codes = new HashMap<>();
+        _a = encode(a, codes);
+        _b = encode(b, codes);
+    }
+
+    /**
+     * Splits CONTENT into lines. A trailing newline does
+     * not produce an extra empty line.
+     * @param content byte[]
+     * @return String[]
+     */
+    static String[] lines(byte[] content) {
+        if (content == null || content.length == 0) {
+            return NO_LINES;
+        }
+        String text = new String(content, StandardCharsets.UTF_8);
+        if (text.endsWith("\n")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return text.split("\n", -1);
+    }
+
+    /**
+     * Splits CONTENT into lines to be diffed. As for lines(),
+     * except that if CONTENT does not end with a newline, its
+     * last line is followed by NO_NEWLINE, on a line of its
+     * own once printed. Adding or removing only the final
+     * newline thus changes the last line.
+     * @param content byte[]
+     * @return String[]
+     */
+    static String[] diffLines(byte[] content) {
+        String[] result = lines(content);
+        if (result.length > 0 && content[content.length - 1] != '\n') {
+            result[result.length - 1] += "\n" + NO_NEWLINE;
+        }
+        return result;
+    }
+
+    /**
+     * Computes the edit script turning the old lines into
+     * the new lines, in order.
+     * @return List of edits
+     */
+    List<Edit> edits() {
+        if (_edits == null) {
+            _edits = new ArrayList<>();
+            compare(0, _a.length, 0, _b.length);
+        }
+        return _edits;
+    }
+
+    /**
+     * Prints the unified diff of file NAME between OLDLINES
+     * and NEWLINES to OUT. A null side denotes a file that
+     * does not exist on that side. Prints nothing if the two
+     * are identical.
+     * @param out PrintStream
+     * @param name String
+     * @param oldLines String[]
+     * @param newLines String[]
+     */
+    static void printUnified(PrintStream out, String name,
+                             String[] oldLines, String[] newLines) {
+        List<Edit> edits = new Diff(
+                oldLines == null ? NO_LINES : oldLines,
+                newLines == null ? NO_LINES : newLines).edits();
+        if (edits.isEmpty()) {
+            return;
+        }
+        out.println("diff --gitlet a/" + name + " b/" + name);
+        out.println("--- " + (oldLines == null ? "/dev/null" : "a/" + name));
+        out.println("+++ " + (newLines == null ? "/dev/null" : "b/" + name));
+        if (oldLines == null) {
+            oldLines = NO_LINES;
+        }
+        if (newLines == null) {
+            newLines = NO_LINES;
+        }
+        int i = 0;
+        while (i < edits.size()) {
+            int j = i;
+            while (j + 1 < edits.size()
+                    && edits.get(j + 1).beginA()
+                    - edits.get(j).endA() <= 2 * CONTEXT) {
+                j += 1;
+            }
+            Edit first = edits.get(i), last = edits.get(j);
+            int startA = Math.max(0, first.beginA() - CONTEXT);
+            int startB = Math.max(0, first.beginB() - CONTEXT);
+            int endA = Math.min(oldLines.length, last.endA() + CONTEXT);
+            int endB = Math.min(newLines.length, last.endB() + CONTEXT);
+            out.println("@@ -" + range(startA, endA)
+                    + " +" + range(startB, endB) + " @@");
+            int posA = startA;
+            for (int k = i; k <= j; k += 1) {
+                Edit e = edits.get(k);
+                for (; posA < e.beginA(); posA += 1) {
+                    out.println(" " + oldLines[posA]);
+                }
+                for (int x = e.beginA(); x < e.endA(); x += 1) {
+                    out.println("-" + oldLines[x]);
+                }
+                for (int y = e.beginB(); y < e.endB(); y += 1) {
+                    out.println("+" + newLines[y]);
+                }
+                posA = e.endA();
+            }
+            for (; posA < endA; posA += 1) {
+                out.println(" " + oldLines[posA]);
+            }
+            i = j + 1;
+        }
+    }
+
+    /**
+     * Formats a hunk range [START, END) as "line,count".
+     * @param start int
+     * @param end int
+     * @return String
+     */
+    private static String range(int start, int end) {
+        int count = end - start;
+        return (count == 0 ? start : start + 1) + "," + count;
+    }
+
+    /**
+     * Maps each line of LINES to an integer code, shared
+     * through CODES.
+     * @param lines String[]
+     * @param codes HashMap
+     * @return int[]
+     */
+    private static int[] encode(String[] lines,
+                                HashMap<String, Integer> codes) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            Integer code = codes.get(lines[i]);
+            if (code == null) {
+                code = codes.size();
+                codes.put(lines[i], code);
+            }
+            result[i] = code;
+        }
+        return result;
+    }
+
+    /**
+     * Diffs _a[ALO, AHI) against _b[BLO, BHI), appending
+     * the edits found to _edits.
+     * @param aLo int
+     * @param aHi int
+     * @param bLo int
+     * @param bHi int
+     */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                addEdit(aLo, aHi, bLo, bHi);
+            }
+            return;
+        }
+        int[] split = middleSnake(aLo, aHi, bLo, bHi);
+        compare(aLo, split[0], bLo, split[1]);
+        compare(split[0], aHi, split[1], bHi);
+    }
+
+    /**
+     * Finds a point on an optimal edit path through
+     * _a[ALO, AHI) and _b[BLO, BHI) by running the greedy
+     * search forward and backward until the two meet. Both
+     * ranges must be non-empty and differ at both ends.
+     * @param aLo int
+     * @param aHi int
+     * @param bLo int
+     * @param bHi int
+     * @return int[] {x, y} split point
+     */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int off = max + 1;
+        int[] vf = new int[2 * max + 3];
+        int[] vb = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1])) {
+                    x = vf[off + k + 1];
+                } else {
+                    x = vf[off + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                if (odd && k >= delta - (d - 1) && k <= delta + (d - 1)
+                        && x + vb[off + delta - k] >= n) {
+                    return new int[] {aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vb[off + k - 1] < vb[off + k + 1])) {
+                    x = vb[off + k + 1];
+                } else {
+                    x = vb[off + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m
+                        && _a[aHi - 1 - x] == _b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[off + k] = x;
+                if (!odd && k >= delta - d && k <= delta + d
+                        && x + vf[off + delta - k] >= n) {
+                    return new int[] {aHi - x, bHi - y};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /**
+     * Records an edit, merging it with the previous one
+     * when the two are adjacent.
+     * @param aLo int
+     * @param aHi int
+     * @param bLo int
+     * @param bHi int
+     */
+    private void addEdit(int aLo, int aHi, int bLo, int bHi) {
+        if (!_edits.isEmpty()) {
+            Edit last = _edits.get(_edits.size() - 1);
+            if (last.endA() == aLo && last.endB() == bLo) {
+                last._endA = aHi;
+                last._endB = bHi;
+                return;
+            }
+        }
+        _edits.add(new Edit(aLo, aHi, bLo, bHi));
+    }
+
+    /** Old sequence, as line codes. */
+    private int[] _a;
+
+    /** New sequence, as line codes. */
+    private int[] _b;
+
+    /** Edit script, computed lazily. */
+    private List<Edit> _edits;
+}
@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Removes commits and blobs that nothing refers to any more, as
+ * left behind by rm-branch, reset and re-adding changed files.
+ * Reachable commits are marked by walking the commit graph from
+ * the given roots, without reading commit objects; the blobs of
+ * the marked commits are then collected by reading those commits
+ * in parallel. Unmarked objects are deleted in parallel, but only
+ * once they are older than a cutoff time, which protects objects
+ * another command has just written and not yet referred to; a
+ * commit spared this way is marked too, with its ancestors. The
+ * commit graph and message index are updated before anything is
+ * deleted, so they never list a deleted commit. Temporary files
+ * left by interrupted writes are removed under the same cutoff.
+ * If a root or an ancestor of one is missing from the graph,
+ * nothing is removed, since the graph cannot say what is
+ * reachable.
+ * @author Adish Jain
+ */
+class GarbageCollector {
+
+    /**
+     * Constructor.
+     * @param dir the .gitlet directory
+     * @param graph commit graph holding every root commit
+     * @param commits reads commits
+     */
+    GarbageCollector(File dir, CommitGraph graph,
+                     CommitWalk.Loader commits) {
+        _dir = dir;
+        _graph = graph;
+        _commits = commits;
+    }
+
+    /**
+     * Removes the commits not reachable from ROOTCOMMITS and
+     * the blobs in none of the remaining commits nor in
+     * ROOTBLOBS, sparing files last modified after CUTOFF
+     * (milliseconds since the epoch). Returns the number of
+     * objects removed.
+     * @param rootCommits Collection of commit ids
+     * @param rootBlobs Collection of blob ids
+     * @param cutoff long
+     * @return int
+     */
+    int collect(Collection<String> rootCommits,
+                Collection<String> rootBlobs, long cutoff) {
+        File commitDir = Utils.join(_dir, "commits");
+        File blobDir = Utils.join(_dir, "blobs");
+        BitSet reachable = mark(rootCommits, new BitSet(_graph.size()));
+        List<String> young = new ArrayList<>();
+        for (String id : Utils.plainFilenamesIn(commitDir)) {
+            int pos = _graph.position(id);
+            if ((pos == -1 || !reachable.get(pos))
+                    && Utils.join(commitDir, id).lastModified() > cutoff) {
+                young.add(id);
+            }
+        }
+        mark(young, reachable);
+        Set<String> liveCommits = ConcurrentHashMap.newKeySet();
+        reachable.stream().parallel()
+                .forEach(pos -> liveCommits.add(_graph.id(pos)));
+        List<File> deadCommits = new ArrayList<>();
+        for (String id : Utils.plainFilenamesIn(commitDir)) {
+            if (!liveCommits.contains(id)) {
+                deadCommits.add(Utils.join(commitDir, id));
+            }
+        }
+        List<Commit> kept = Arrays.asList(liveCommits.parallelStream()
+                .map(_commits::load).toArray(Commit[]::new));
+        Set<String> liveBlobs = ConcurrentHashMap.newKeySet();
+        liveBlobs.addAll(rootBlobs);
+        kept.parallelStream()
+                .forEach(c -> liveBlobs.addAll(c.getBlobs().values()));
+        List<File> deadBlobs = new ArrayList<>();
+        for (String id : Utils.plainFilenamesIn(blobDir)) {
+            File f = Utils.join(blobDir, id);
+            if (!liveBlobs.contains(id) && f.lastModified() <= cutoff) {
+                deadBlobs.add(f);
+            }
+        }
+        if (!deadCommits.isEmpty()) {
+            CommitGraph.rebuild(Utils.join(_dir, "commit-graph"), kept);
+            new MessageIndex(Utils.join(_dir, "messages")).clear();
+        }
+        int removed = sweep(deadCommits) + sweep(deadBlobs);
+        for (File dir : new File[] {_dir, commitDir, blobDir}) {
+            sweep(temporaryFiles(dir, cutoff));
+        }
+        return removed;
+    }
+
+    /**
+     * Marks in MARKED the graph positions of the commits
+     * reachable from ROOTS, and returns MARKED. Throws a
+     * GitletException if one of those commits is not in
+     * the graph.
+     * @param roots Collection of commit ids
+     * @param marked BitSet
+     * @return BitSet
+     */
+    private BitSet mark(Collection<String> roots, BitSet marked) {
+        CommitDag dag = new CommitDag(_graph);
+        for (String id : roots) {
+            int pos = _graph.position(id);
+            if (pos == -1) {
+                throw Utils.error("Commit %s is missing; "
+                        + "no objects were removed.", id);
+            }
+            dag.markReachable(pos, marked);
+        }
+        for (int p = marked.nextSetBit(0); p >= 0;
+             p = marked.nextSetBit(p + 1)) {
+            if (_graph.parent(p) == CommitGraph.MISSING
+                    || _graph.parent2(p) == CommitGraph.MISSING) {
+                throw Utils.error("A parent of commit %s is missing; "
+                        + "no objects were removed.", _graph.id(p));
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * Returns the temporary files in DIR last modified at or
+     * before CUTOFF.
+     * @param dir File
+     * @param cutoff long
+     * @return List
+     */
+    private static List<File> temporaryFiles(File dir, long cutoff) {
+        List<File> result = new ArrayList<>();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                File f = Utils.join(dir, name);
+                if (Utils.isTemporary(name) && f.lastModified() <= cutoff) {
+                    result.add(f);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes FILES in parallel and returns the number
+     * deleted.
+     * @param files List
+     * @return int
+     */
+    private static int sweep(List<File> files) {
+        return (int) files.parallelStream().filter(File::delete).count();
+    }
+
+    /** The .gitlet directory. */
+    private File _dir;
+
+    /** The commit graph. */
+    private CommitGraph _graph;
+
+    /** Reads commits. */
+    private CommitWalk.Loader _commits;
+}
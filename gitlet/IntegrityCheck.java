@@ -0,0 +1,160 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Verifies that the objects of a repository match their ids and
+ * that everything refers only to objects that exist. Every blob
+ * is read and rehashed; every commit is read, its recorded id
+ * compared with its file name, and its parents and blobs looked
+ * up. Objects are read straight from disk, in parallel, never
+ * from a cache. Commit ids cannot be recomputed, because a
+ * commit's id is taken before its staged files are added to it,
+ * so a commit is only checked to be readable and to carry the id
+ * it is stored under.
+ * @author Adish Jain
+ */
+class IntegrityCheck {
+
+    /**
+     * Constructor.
+     * @param dir the .gitlet directory
+     */
+    IntegrityCheck(File dir) {
+        _commitDir = Utils.join(dir, "commits");
+        _blobDir = Utils.join(dir, "blobs");
+    }
+
+    /**
+     * Returns true iff OBJ, read from the file named ID,
+     * is intact: a blob whose contents hash to ID, or a
+     * commit that records ID as its id. Objects of other
+     * kinds carry no id and are taken to be intact.
+     * @param id String
+     * @param obj Object
+     * @return boolean
+     */
+    static boolean intact(String id, Object obj) {
+        if (obj instanceof Blob) {
+            Blob blob = (Blob) obj;
+            return id.equals(blob.getID()) && id.equals(
+                    new Blob(blob.getName(), blob.getContent()).getID());
+        } else if (obj instanceof Commit) {
+            return id.equals(((Commit) obj).getID());
+        }
+        return true;
+    }
+
+    /**
+     * Checks every object, the branches REFS (name -->
+     * commit id), the current branch HEAD and the STAGED
+     * blob ids. Returns the problems found, in order.
+     * @param refs Map
+     * @param head String
+     * @param staged Collection of blob ids
+     * @return List
+     */
+    List<String> run(Map<String, String> refs, String head,
+                     Collection<String> staged) {
+        Set<String> commitIDs = new HashSet<>(
+                Utils.plainFilenamesIn(_commitDir));
+        Set<String> blobIDs = new HashSet<>(
+                Utils.plainFilenamesIn(_blobDir));
+        Queue<String> problems = new ConcurrentLinkedQueue<>();
+        commitIDs.parallelStream().forEach(id -> {
+            Commit c = read(_commitDir, id, Commit.class, problems);
+            if (c == null) {
+                return;
+            }
+            for (String parent : new String[] {c.getParent(),
+                                               c.getParent2()}) {
+                if (parent != null && !parent.isEmpty()
+                        && !commitIDs.contains(parent)) {
+                    problems.add(String.format(
+                            "commit %s: missing parent %s", id, parent));
+                }
+            }
+            for (Map.Entry<String, String> e : c.getBlobs().entrySet()) {
+                if (!blobIDs.contains(e.getValue())) {
+                    problems.add(String.format(
+                            "commit %s: missing blob %s for %s", id,
+                            e.getValue(), e.getKey()));
+                }
+            }
+        });
+        blobIDs.parallelStream()
+                .forEach(id -> read(_blobDir, id, Blob.class, problems));
+        for (Map.Entry<String, String> e : refs.entrySet()) {
+            if (!commitIDs.contains(e.getValue())) {
+                problems.add(String.format("branch %s: missing commit %s",
+                        e.getKey(), e.getValue()));
+            }
+        }
+        if (!refs.containsKey(head)) {
+            problems.add(String.format("HEAD: missing branch %s", head));
+        }
+        for (String id : staged) {
+            if (!blobIDs.contains(id)) {
+                problems.add(String.format("index: missing blob %s", id));
+            }
+        }
+        _checked = commitIDs.size() + blobIDs.size();
+        List<String> result = new ArrayList<>(problems);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the number of objects the last run checked.
+     * @return int
+     */
+    int checked() {
+        return _checked;
+    }
+
+    /**
+     * Reads the object of type CLS in file ID of DIR,
+     * adding to PROBLEMS and returning null if it is not
+     * intact.
+     * @param dir File
+     * @param id String
+     * @param cls Class
+     * @param problems Queue
+     * @param <T> type of the object
+     * @return T
+     */
+    private static <T extends Serializable> T read(
+            File dir, String id, Class<T> cls, Queue<String> problems) {
+        String kind = cls.getSimpleName().toLowerCase(Locale.ROOT);
+        try {
+            T obj = Utils.readObject(Utils.join(dir, id), cls);
+            if (intact(id, obj)) {
+                return obj;
+            }
+            problems.add(String.format("%s %s: hash mismatch", kind, id));
+        } catch (RuntimeException excp) {
+            problems.add(String.format("%s %s: unreadable", kind, id));
+        }
+        return null;
+    }
+
+    /** Directory of commits. */
+    private File _commitDir;
+
+    /** Directory of blobs. */
+    private File _blobDir;
+
+    /** Number of objects the last run checked. */
+    private int _checked;
+}
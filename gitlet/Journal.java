@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write-ahead journal making an update of several repository
+ * files all-or-nothing. The planned writes and deletions are
+ * first saved, together, in the file .gitlet/journal; only then
+ * are they carried out, and the journal is removed once they
+ * are done. If a command dies part way, the next command finds
+ * the journal and carries out the rest. A journal that was never
+ * completely saved is only a temporary file, which is discarded,
+ * leaving every file as it was. Either way, recovery costs time
+ * proportional to the size of the one interrupted update.
+ * @author Adish Jain
+ */
+class Journal {
+
+    /** Marks the start of a journal file. */
+    static final int MAGIC = 0x474a4e4c;
+
+    /**
+     * Constructor.
+     * @param dir directory holding the journal; the files
+     *            it updates must be inside it
+     */
+    Journal(File dir) {
+        _dir = dir;
+        _file = Utils.join(dir, NAME);
+    }
+
+    /**
+     * Plans to replace FILE's contents with CONTENTS.
+     * @param file File
+     * @param contents byte[]
+     */
+    void write(File file, byte[] contents) {
+        _ops.add(new Op(relative(file), contents));
+    }
+
+    /**
+     * Plans to delete FILE.
+     * @param file File
+     */
+    void delete(File file) {
+        _ops.add(new Op(relative(file), null));
+    }
+
+    /**
+     * Carries out the planned changes: saves them in the
+     * journal, applies them, and removes the journal. Files
+     * the journal depends on (written earlier in BATCH mode)
+     * are made durable first.
+     */
+    void commit() {
+        if (_ops.isEmpty()) {
+            return;
+        }
+        Utils.syncPending();
+        Utils.writeContents(_file, encode());
+        Utils.syncPending();
+        apply();
+        _ops.clear();
+    }
+
+    /**
+     * Returns true iff a command died leaving an update
+     * for recover() to finish.
+     * @return boolean
+     */
+    boolean pending() {
+        return _file.isFile();
+    }
+
+    /**
+     * Finishes the update left by a command that died,
+     * if any, and discards a journal it did not finish
+     * saving.
+     */
+    void recover() {
+        for (String name : _dir.list()) {
+            if (Utils.isTemporary(name) && name.startsWith("." + NAME)) {
+                Utils.join(_dir, name).delete();
+            }
+        }
+        if (_file.isFile()) {
+            decode(Utils.readContents(_file));
+            apply();
+            _ops.clear();
+        }
+    }
+
+    /**
+     * Applies the planned changes and removes the journal.
+     */
+    private void apply() {
+        for (Op op : _ops) {
+            File target = Utils.join(_dir, op._path);
+            if (op._contents == null) {
+                target.delete();
+            } else {
+                Utils.writeContents(target, op._contents);
+            }
+        }
+        Utils.syncPending();
+        _file.delete();
+    }
+
+    /**
+     * Returns the journal's contents.
+     * @return byte[]
+     */
+    private byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(_ops.size());
+            for (Op op : _ops) {
+                out.writeUTF(op._path);
+                if (op._contents == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(op._contents.length);
+                    out.write(op._contents);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Sets the planned changes to those in CONTENTS, a
+     * journal's contents.
+     * @param contents byte[]
+     */
+    private void decode(byte[] contents) {
+        _ops.clear();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(contents))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("corrupt journal");
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readUTF();
+                int length = in.readInt();
+                byte[] data = null;
+                if (length >= 0) {
+                    data = new byte[length];
+                    in.readFully(data);
+                }
+                _ops.add(new Op(path, data));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the path of FILE relative to the journal's
+     * directory.
+     * @param file File
+     * @return String
+     */
+    private String relative(File file) {
+        return _dir.toPath().toAbsolutePath()
+                .relativize(file.toPath().toAbsolutePath()).toString();
+    }
+
+    /** A planned change to one file. */
+    private static class Op {
+        /**
+         * Constructor.
+         * @param path path relative to the journal's directory
+         * @param contents new contents, or null to delete
+         */
+        Op(String path, byte[] contents) {
+            _path = path;
+            _contents = contents;
+        }
+
+        /** Path relative to the journal's directory. */
+        private final String _path;
+
+        /** New contents, or null to delete. */
+        private final byte[] _contents;
+    }
+
+    /** Name of the journal file. */
+    private static final String NAME = "journal";
+
+    /** Directory holding the journal. */
+    private File _dir;
+
+    /** The journal file. */
+    private File _file;
+
+    /** Planned changes, in order. */
+    private List<Op> _ops = new ArrayList<>();
+}
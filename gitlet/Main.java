@@ -9,7 +9,12 @@ public class Main {
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) {
         Commands commandInterpreter = new Commands(args);
-        commandInterpreter.doCommand();
+        try {
+            commandInterpreter.doCommand();
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            System.exit(0);
+        }
     }
 
 }
@@ -0,0 +1,310 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Classifies every path of a three-way merge in one pass over
+ * the sorted union of the paths tracked by the split point, the
+ * head commit and the given commit. Files renamed on one side
+ * (see Renames) are merged with their old path on the other side
+ * by content.
+ * @author Adish Jain
+ */
+class Merge {
+
+    /**
+     * What a merge does with one path.
+     */
+    enum Action {
+        /** Leave the head's version (or absence) alone. */
+        KEEP,
+        /** Check out and stage the given commit's version. */
+        TAKE_GIVEN,
+        /** Delete and untrack the file. */
+        REMOVE,
+        /** Check out and stage the head's (renamed) version. */
+        MOVE_HEAD,
+        /** Both sides changed the file differently. */
+        CONFLICT
+    }
+
+    /**
+     * Receives the action chosen for each path.
+     */
+    interface Handler {
+        /**
+         * Applies ACTION to PATH, whose blob ids in the head
+         * and given commits are HEADID and GIVENID (null if
+         * absent).
+         * @param path String
+         * @param action Action
+         * @param headID String
+         * @param givenID String
+         */
+        void apply(String path, Action action, String headID,
+                   String givenID);
+    }
+
+    /**
+     * Reads the contents of blobs.
+     */
+    interface Source {
+        /**
+         * Returns the contents of the blob with id BLOBID.
+         * @param blobID String
+         * @return byte[]
+         */
+        byte[] content(String blobID);
+    }
+
+    /**
+     * Constructor.
+     * @param split blob map of the split point
+     * @param head blob map of the current head
+     * @param given blob map of the given branch's head
+     * @param source reads blob contents for rename detection
+     */
+    Merge(Map<String, String> split, Map<String, String> head,
+          Map<String, String> given, Source source) {
+        _split = split;
+        _head = head;
+        _given = given;
+        _source = source;
+    }
+
+    /**
+     * Returns the action for a path whose blob ids at the
+     * split point, head and given commit are SPLITID, HEADID
+     * and GIVENID (null if absent).
+     * @param splitID String
+     * @param headID String
+     * @param givenID String
+     * @return Action
+     */
+    static Action classify(String splitID, String headID,
+                           String givenID) {
+        if (same(headID, givenID)) {
+            return Action.KEEP;
+        } else if (same(splitID, headID)) {
+            return givenID == null ? Action.REMOVE : Action.TAKE_GIVEN;
+        } else if (same(splitID, givenID)) {
+            return Action.KEEP;
+        }
+        return Action.CONFLICT;
+    }
+
+    /**
+     * Walks the paths of all three commits in sorted order,
+     * passing each path that needs work (any action other
+     * than KEEP) to HANDLER.
+     * @param handler Handler
+     * @return true iff some path was in conflict
+     */
+    boolean run(Handler handler) {
+        findRenames();
+        String[] s = sortedKeys(_split), h = sortedKeys(_head),
+                g = sortedKeys(_given);
+        int i = 0, j = 0, k = 0;
+        boolean conflict = false;
+        while (i < s.length || j < h.length || k < g.length) {
+            String path = min(min(at(s, i), at(h, j)), at(g, k));
+            String splitID = null, headID = null, givenID = null;
+            if (path.equals(at(s, i))) {
+                splitID = _split.get(path);
+                i += 1;
+            }
+            if (path.equals(at(h, j))) {
+                headID = _head.get(path);
+                j += 1;
+            }
+            if (path.equals(at(g, k))) {
+                givenID = _given.get(path);
+                k += 1;
+            }
+            Action action;
+            if (_headRenames.containsKey(path)) {
+                action = Action.KEEP;
+            } else if (_givenRenames.containsKey(path)) {
+                action = Action.REMOVE;
+            } else if (_headRenamedFrom.containsKey(path)) {
+                String old = _headRenamedFrom.get(path);
+                splitID = _split.get(old);
+                givenID = _given.get(old);
+                action = classifyRename(splitID, headID, givenID);
+            } else if (_givenRenamedFrom.containsKey(path)) {
+                String old = _givenRenamedFrom.get(path);
+                splitID = _split.get(old);
+                headID = _head.get(old);
+                action = classifyRename(splitID, headID, givenID);
+                if (action == Action.KEEP) {
+                    action = Action.MOVE_HEAD;
+                }
+            } else {
+                action = classify(splitID, headID, givenID);
+            }
+            if (action != Action.KEEP) {
+                conflict |= action == Action.CONFLICT;
+                handler.apply(path, action, headID, givenID);
+            }
+        }
+        return conflict;
+    }
+
+    /**
+     * Like classify, but for a file renamed on one side, whose
+     * blob ids differ across names. Compares contents instead.
+     * Returns KEEP when the head's contents win and TAKE_GIVEN
+     * when the given side's do.
+     * @param splitID String
+     * @param headID String
+     * @param givenID String
+     * @return Action
+     */
+    private Action classifyRename(String splitID, String headID,
+                                  String givenID) {
+        String split = contentHash(splitID), head = contentHash(headID),
+                given = contentHash(givenID);
+        if (head.equals(given) || split.equals(given)) {
+            return Action.KEEP;
+        } else if (split.equals(head)) {
+            return Action.TAKE_GIVEN;
+        }
+        return Action.CONFLICT;
+    }
+
+    /**
+     * Finds the files renamed since the split point on each
+     * side. Only paths the other side still has under the old
+     * name are candidates, so a path renamed on both sides is
+     * left to the path-based rules.
+     */
+    private void findRenames() {
+        HashMap<String, String> headDeleted = new HashMap<>(),
+                headAdded = new HashMap<>(), givenDeleted = new HashMap<>(),
+                givenAdded = new HashMap<>();
+        for (Map.Entry<String, String> e : _split.entrySet()) {
+            boolean inHead = _head.containsKey(e.getKey()),
+                    inGiven = _given.containsKey(e.getKey());
+            if (!inHead && inGiven) {
+                headDeleted.put(e.getKey(), e.getValue());
+            } else if (inHead && !inGiven) {
+                givenDeleted.put(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<String, String> e : _head.entrySet()) {
+            if (!_split.containsKey(e.getKey())
+                    && !_given.containsKey(e.getKey())) {
+                headAdded.put(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<String, String> e : _given.entrySet()) {
+            if (!_split.containsKey(e.getKey())
+                    && !_head.containsKey(e.getKey())) {
+                givenAdded.put(e.getKey(), e.getValue());
+            }
+        }
+        Renames renames = new Renames(_source);
+        _headRenames = renames.detect(headDeleted, headAdded);
+        _givenRenames = renames.detect(givenDeleted, givenAdded);
+        _headRenamedFrom = invert(_headRenames);
+        _givenRenamedFrom = invert(_givenRenames);
+    }
+
+    /**
+     * Returns the SHA-1 of the contents of blob BLOBID, or
+     * the empty string for a missing blob.
+     * @param blobID String
+     * @return String
+     */
+    private String contentHash(String blobID) {
+        if (blobID == null) {
+            return "";
+        }
+        return Utils.sha1(_source.content(blobID));
+    }
+
+    /**
+     * Returns the inverse of the one-to-one map MAP.
+     * @param map Map
+     * @return HashMap
+     */
+    private static HashMap<String, String> invert(Map<String, String> map) {
+        HashMap<String, String> result = new HashMap<>();
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            result.put(e.getValue(), e.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the keys of MAP, sorted.
+     * @param map Map
+     * @return String[]
+     */
+    private static String[] sortedKeys(Map<String, String> map) {
+        String[] keys = map.keySet().toArray(new String[map.size()]);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Returns KEYS[I], or null when I is past the end.
+     * @param keys String[]
+     * @param i int
+     * @return String
+     */
+    private static String at(String[] keys, int i) {
+        return i < keys.length ? keys[i] : null;
+    }
+
+    /**
+     * Returns the lesser of A and B, where null sorts last.
+     * @param a String
+     * @param b String
+     * @return String
+     */
+    private static String min(String a, String b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        }
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    /**
+     * Returns true iff blob ids A and B are equal or both null.
+     * @param a String
+     * @param b String
+     * @return boolean
+     */
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** Blob map of the split point. */
+    private Map<String, String> _split;
+
+    /** Blob map of the current head. */
+    private Map<String, String> _head;
+
+    /** Blob map of the given branch's head. */
+    private Map<String, String> _given;
+
+    /** Reads blob contents. */
+    private Source _source;
+
+    /** Files renamed in the head (old path --> new path). */
+    private Map<String, String> _headRenames;
+
+    /** Files renamed in the given commit (old path --> new path). */
+    private Map<String, String> _givenRenames;
+
+    /** Inverse of _headRenames. */
+    private Map<String, String> _headRenamedFrom;
+
+    /** Inverse of _givenRenames. */
+    private Map<String, String> _givenRenamedFrom;
+}
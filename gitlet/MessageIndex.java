@@ -0,0 +1,238 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Inverted index from commit messages to commit ids, kept in
+ * the directory .gitlet/messages. There is one posting file per
+ * distinct message and one per distinct word, named by the
+ * SHA-1 of the key and listing commit ids in the order they
+ * were made. A lookup opens one file per key and never reads
+ * commit objects. A missing index is built whole in a temporary
+ * directory that is then renamed into place, so commands reading
+ * the repository at the same time never see it part built.
+ * @author Adish Jain
+ */
+class MessageIndex {
+
+    /**
+     * Constructor.
+     * @param dir directory holding the posting files
+     */
+    MessageIndex(File dir) {
+        _dir = dir;
+    }
+
+    /**
+     * Returns true iff the index exists on disk.
+     * @return boolean
+     */
+    boolean exists() {
+        return _dir.isDirectory();
+    }
+
+    /**
+     * Records that commit COMMITID has message MESSAGE.
+     * @param commitID String
+     * @param message String
+     */
+    void add(String commitID, String message) {
+        _dir.mkdir();
+        byte[] line = (commitID + "\n").getBytes(StandardCharsets.UTF_8);
+        append(posting(MESSAGE_KEY, message), line);
+        for (String word : words(message)) {
+            append(posting(WORD_KEY, word), line);
+        }
+    }
+
+    /**
+     * Builds the index of COMMS, which must be all commits,
+     * oldest first, unless another command builds it first.
+     * @param comms List
+     */
+    void build(List<Commit> comms) {
+        LinkedHashMap<String, LinkedHashSet<String>> postings =
+                new LinkedHashMap<>();
+        for (Commit c : comms) {
+            postings.computeIfAbsent(posting(MESSAGE_KEY, c.getMessage())
+                    .getName(), k -> new LinkedHashSet<>()).add(c.getID());
+            for (String word : words(c.getMessage())) {
+                postings.computeIfAbsent(posting(WORD_KEY, word).getName(),
+                        k -> new LinkedHashSet<>()).add(c.getID());
+            }
+        }
+        File parent = _dir.getAbsoluteFile().getParentFile();
+        File temp = null;
+        try {
+            temp = Files.createTempDirectory(parent.toPath(),
+                    "." + _dir.getName()).toFile();
+            for (Map.Entry<String, LinkedHashSet<String>> e
+                     : postings.entrySet()) {
+                StringBuilder text = new StringBuilder();
+                for (String id : e.getValue()) {
+                    text.append(id).append('\n');
+                }
+                Files.write(Utils.join(temp, e.getKey()).toPath(),
+                        text.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            Files.move(temp.toPath(), _dir.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException excp) {
+            if (!exists()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        } finally {
+            if (temp != null) {
+                delete(temp);
+            }
+        }
+    }
+
+    /**
+     * Deletes the index, which is rebuilt when next needed,
+     * along with any builds of it left by commands that died.
+     */
+    void clear() {
+        if (exists()) {
+            delete(_dir);
+        }
+        File parent = _dir.getAbsoluteFile().getParentFile();
+        for (String name : parent.list()) {
+            if (name.startsWith("." + _dir.getName())) {
+                delete(Utils.join(parent, name));
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of commits whose message is exactly
+     * MESSAGE, oldest first.
+     * @param message String
+     * @return List
+     */
+    List<String> exact(String message) {
+        return read(posting(MESSAGE_KEY, message));
+    }
+
+    /**
+     * Returns the ids of commits whose messages contain all
+     * of WORDS (ignoring case), oldest first.
+     * @param words String[]
+     * @return List
+     */
+    List<String> allWords(String[] words) {
+        LinkedHashSet<String> keys = new LinkedHashSet<>();
+        for (String w : words) {
+            keys.addAll(words(w));
+        }
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<List<String>> postings = new ArrayList<>();
+        for (String key : keys) {
+            postings.add(read(posting(WORD_KEY, key)));
+        }
+        postings.sort(Comparator.comparingInt(List::size));
+        LinkedHashSet<String> result = new LinkedHashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i += 1) {
+            result.retainAll(new LinkedHashSet<>(postings.get(i)));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Returns the distinct lower-case words of TEXT, where a
+     * word is a maximal run of letters and digits.
+     * @param text String
+     * @return List
+     */
+    static List<String> words(String text) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String w : text.toLowerCase(Locale.ROOT)
+                .split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) {
+                result.add(w);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Returns the posting file for KEY of kind KIND.
+     * @param kind String
+     * @param key String
+     * @return File
+     */
+    private File posting(String kind, String key) {
+        return Utils.join(_dir, Utils.sha1(kind, key));
+    }
+
+    /**
+     * Deletes DIR and the files in it.
+     * @param dir File
+     */
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Appends LINE to FILE.
+     * @param file File
+     * @param line byte[]
+     */
+    private static void append(File file, byte[] line) {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(line);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the distinct commit ids listed in posting file
+     * FILE, in order.
+     * @param file File
+     * @return List
+     */
+    private static List<String> read(File file) {
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+        String text = Utils.readContentsAsString(file);
+        if (text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(
+                new LinkedHashSet<>(Arrays.asList(text.split("\n"))));
+    }
+
+    /** Prefix of keys for whole messages. */
+    private static final String MESSAGE_KEY = "message\0";
+
+    /** Prefix of keys for words. */
+    private static final String WORD_KEY = "word\0";
+
+    /** Directory holding the posting files. */
+    private File _dir;
+}
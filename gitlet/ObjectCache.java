@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cache of deserialized repository objects (commits and blobs),
+ * keyed by object id, which is also the name of the object's
+ * file. Objects are never modified once written, so a cached
+ * copy stays valid for as long as the command runs. The cache
+ * holds objects whose files total at most a fixed number of
+ * bytes, evicting the least recently used first. Callers must
+ * not modify the objects it returns. It may be used from
+ * several threads; objects are read from disk outside its lock.
+ * Objects read from disk can be checked against their ids (see
+ * IntegrityCheck.intact) before they are cached: never, for a
+ * random sample of reads, or always. A failed check, or an
+ * object file that cannot be read back as an object of the
+ * expected type, is reported as a GitletException.
+ * @author Adish Jain
+ */
+class ObjectCache {
+
+    /** Which objects read from disk are checked against their ids. */
+    enum Verify {
+        /** None. */
+        OFF,
+        /** One read in SAMPLE_RATE, chosen at random. */
+        SAMPLED,
+        /** All. */
+        ALWAYS
+    }
+
+    /** One in this many reads is checked in SAMPLED mode. */
+    static final int SAMPLE_RATE = 16;
+
+    /**
+     * Constructor.
+     * @param capacity maximum total size in bytes of the
+     *                 files of the cached objects
+     */
+    ObjectCache(long capacity) {
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the object of type CLS stored in FILE, reading
+     * it only if it is not already cached. Throws a
+     * GitletException if FILE does not hold such an object.
+     * @param file File named by the object's id
+     * @param cls Class
+     * @param <T> type of the object
+     * @return T
+     */
+    <T extends Serializable> T read(File file, Class<T> cls) {
+        String id = file.getName();
+        synchronized (this) {
+            Entry entry = _entries.get(id);
+            if (entry != null) {
+                _hits += 1;
+                return cls.cast(entry._object);
+            }
+            _misses += 1;
+        }
+        T result;
+        try {
+            result = Utils.readObject(file, cls);
+        } catch (RuntimeException excp) {
+            if (!file.isFile()) {
+                throw excp;
+            }
+            throw Utils.error("Object %s is corrupt.", id);
+        }
+        if (_verify == Verify.ALWAYS || _verify == Verify.SAMPLED
+                && ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0) {
+            verify(id, result);
+        }
+        put(id, result, file.length());
+        return result;
+    }
+
+    /**
+     * Sets which objects read from disk are checked
+     * against their ids to MODE.
+     * @param mode Verify
+     */
+    void setVerification(Verify mode) {
+        _verify = mode;
+    }
+
+    /**
+     * Checks that OBJ, read from the file named ID, matches
+     * ID, counting the checks and the time they take.
+     * @param id String
+     * @param obj Object
+     */
+    private void verify(String id, Object obj) {
+        long start = System.nanoTime();
+        boolean intact = IntegrityCheck.intact(id, obj);
+        synchronized (this) {
+            _verified += 1;
+            _verifyTime += System.nanoTime() - start;
+        }
+        if (!intact) {
+            throw Utils.error("Object %s is corrupt.", id);
+        }
+    }
+
+    /**
+     * Returns the number of reads answered from the cache.
+     * @return long
+     */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /**
+     * Returns the number of reads that went to disk.
+     * @return long
+     */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /**
+     * Returns a one-line summary of the cache's counters.
+     * @return String
+     */
+    synchronized String stats() {
+        return String.format("object cache: %d hits, %d misses, "
+                + "%d objects, %d bytes; verified %d reads in %.3f ms",
+                _hits, _misses, _entries.size(), _size, _verified,
+                _verifyTime / 1e6);
+    }
+
+    /**
+     * Caches OBJECT, whose file is SIZE bytes long, under
+     * ID, evicting the least recently used objects as
+     * needed. Objects larger than the whole cache are not
+     * kept.
+     * @param id String
+     * @param object Object
+     * @param size long
+     */
+    private synchronized void put(String id, Object object, long size) {
+        if (size > _capacity || _entries.containsKey(id)) {
+            return;
+        }
+        _entries.put(id, new Entry(object, size));
+        _size += size;
+        Iterator<Entry> oldest = _entries.values().iterator();
+        while (_size > _capacity) {
+            _size -= oldest.next()._size;
+            oldest.remove();
+        }
+    }
+
+    /** A cached object and the size of its file. */
+    private static class Entry {
+        /**
+         * Constructor.
+         * @param object Object
+         * @param size long
+         */
+        Entry(Object object, long size) {
+            _object = object;
+            _size = size;
+        }
+
+        /** The object. */
+        private final Object _object;
+
+        /** Size in bytes of its file. */
+        private final long _size;
+    }
+
+    /** Maximum total size of cached objects' files. */
+    private final long _capacity;
+
+    /** Id --> cached object, least recently used first. */
+    private final Map<String, Entry> _entries;
+
+    /** Total size of cached objects' files. */
+    private long _size;
+
+    /** Number of reads answered from the cache. */
+    private long _hits;
+
+    /** Number of reads that went to disk. */
+    private long _misses;
+
+    /** Which reads are checked against their ids. */
+    private Verify _verify = Verify.OFF;
+
+    /** Number of reads checked against their ids. */
+    private long _verified;
+
+    /** Nanoseconds spent checking reads against their ids. */
+    private long _verifyTime;
+}
@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Bloom filters over sets of file paths, stored as arrays of
+ * 64-bit words. Used to record which paths each commit changed:
+ * a path a filter does not contain was certainly not changed.
+ * @author Adish Jain
+ */
+class PathFilter {
+
+    /** Number of bits set per path. */
+    static final int HASHES = 7;
+
+    /** Number of filter bits per path. */
+    static final int BITS_PER_PATH = 10;
+
+    /**
+     * Sets of more paths than this get no filter; such a
+     * commit must be assumed to have changed every path.
+     */
+    static final int MAX_PATHS = 512;
+
+    /**
+     * Returns a filter containing PATHS, or null if there
+     * are more than MAX_PATHS of them.
+     * @param paths Collection
+     * @return long[]
+     */
+    static long[] build(Collection<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            return null;
+        }
+        int words = Math.max(1,
+                (paths.size() * BITS_PER_PATH + Long.SIZE - 1) / Long.SIZE);
+        long[] filter = new long[words];
+        for (String path : paths) {
+            long hash = hash(path);
+            for (int i = 0; i < HASHES; i += 1) {
+                int bit = bit(hash, i, filter.length);
+                filter[bit >>> 6] |= 1L << bit;
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Returns false if FILTER certainly does not contain PATH.
+     * A null FILTER may contain anything.
+     * @param filter long[]
+     * @param path String
+     * @return boolean
+     */
+    static boolean mightContain(long[] filter, String path) {
+        if (filter == null) {
+            return true;
+        }
+        long hash = hash(path);
+        for (int i = 0; i < HASHES; i += 1) {
+            int bit = bit(hash, i, filter.length);
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the bit for the Ith hash function of a path
+     * with 64-bit hash HASH, in a filter of WORDS words.
+     * @param hash long
+     * @param i int
+     * @param words int
+     * @return int
+     */
+    private static int bit(long hash, int i, int words) {
+        int h1 = (int) hash, h2 = (int) (hash >>> 32) | 1;
+        return (int) (Integer.toUnsignedLong(h1 + i * h2)
+                % ((long) words * Long.SIZE));
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of PATH.
+     * @param path String
+     * @return long
+     */
+    private static long hash(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,345 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Branch name --> commit id store. Most refs live in the file
+ * .gitlet/packed-refs, one "ID NAME" line per ref, sorted by
+ * name so that a single ref is found by binary search without
+ * parsing the whole file. Recent updates live in the small file
+ * .gitlet/loose-refs, which overrides packed-refs ("- NAME"
+ * marks a deleted ref) and is folded into it once it holds more
+ * than LOOSE_LIMIT refs. Each file is read at most once. Both
+ * files are only ever replaced whole, through a Journal, so a
+ * transaction's updates all become visible at once.
+ * @author Adish Jain
+ */
+class RefStore {
+
+    /**
+     * Most refs kept in loose-refs before they are
+     * folded into packed-refs.
+     */
+    static final int LOOSE_LIMIT = 64;
+
+    /** Order of refs in packed-refs: by UTF-8 bytes of the name. */
+    static final Comparator<String> ORDER = (a, b) -> Arrays.compareUnsigned(
+            a.getBytes(StandardCharsets.UTF_8),
+            b.getBytes(StandardCharsets.UTF_8));
+
+    /**
+     * Constructor.
+     * @param dir directory holding the ref files
+     */
+    RefStore(File dir) {
+        _packed = Utils.join(dir, "packed-refs");
+        _loose = Utils.join(dir, "loose-refs");
+    }
+
+    /**
+     * Returns true iff the store exists on disk.
+     * @return boolean
+     */
+    boolean exists() {
+        return _packed.isFile();
+    }
+
+    /**
+     * Replaces the store's contents with REFS
+     * (name --> commit id).
+     * @param refs Map
+     */
+    void create(Map<String, String> refs) {
+        TreeMap<String, String> sorted = new TreeMap<>(ORDER);
+        sorted.putAll(refs);
+        _packedContents = format(sorted);
+        Utils.writeContents(_packed, _packedContents);
+        Utils.writeContents(_loose, new byte[0]);
+        _overlay = new TreeMap<>(ORDER);
+    }
+
+    /**
+     * Returns the id of the commit ref NAME points to, or
+     * null if there is no such ref.
+     * @param name String
+     * @return String
+     */
+    String get(String name) {
+        TreeMap<String, String> overlay = overlay();
+        if (overlay.containsKey(name)) {
+            return overlay.get(name);
+        }
+        return search(name);
+    }
+
+    /**
+     * Returns all refs, name --> commit id, sorted by name.
+     * @return TreeMap
+     */
+    TreeMap<String, String> all() {
+        TreeMap<String, String> result = parse(packed());
+        apply(result, overlay());
+        return result;
+    }
+
+    /**
+     * Returns a new, empty transaction on this store.
+     * @return Transaction
+     */
+    Transaction transaction() {
+        return new Transaction();
+    }
+
+    /**
+     * A set of ref updates made visible together by commit().
+     */
+    class Transaction {
+
+        /**
+         * Points ref NAME at commit COMMITID.
+         * @param name String
+         * @param commitID String
+         */
+        void update(String name, String commitID) {
+            _updates.put(name, commitID);
+        }
+
+        /**
+         * Deletes ref NAME.
+         * @param name String
+         */
+        void delete(String name) {
+            _updates.put(name, null);
+        }
+
+        /**
+         * Returns true iff this transaction updates or
+         * deletes ref NAME.
+         * @param name String
+         * @return boolean
+         */
+        boolean changes(String name) {
+            return _updates.containsKey(name);
+        }
+
+        /**
+         * Returns the commit id this transaction points ref
+         * NAME at, or null if it deletes NAME.
+         * @param name String
+         * @return String
+         */
+        String get(String name) {
+            return _updates.get(name);
+        }
+
+        /**
+         * Applies this transaction's updates to MAP
+         * (name --> commit id).
+         * @param map Map
+         */
+        void applyTo(Map<String, String> map) {
+            apply(map, _updates);
+        }
+
+        /**
+         * Adds this transaction's updates to JOURNAL, becoming
+         * visible when it commits. Costs time proportional to
+         * the size of loose-refs, except when it overflows and
+         * is folded into packed-refs.
+         * @param journal Journal
+         */
+        void commit(Journal journal) {
+            if (_updates.isEmpty()) {
+                return;
+            }
+            TreeMap<String, String> overlay = new TreeMap<>(ORDER);
+            overlay.putAll(overlay());
+            for (Map.Entry<String, String> e : _updates.entrySet()) {
+                if (e.getValue() == null && search(e.getKey()) == null) {
+                    overlay.remove(e.getKey());
+                } else {
+                    overlay.put(e.getKey(), e.getValue());
+                }
+            }
+            if (overlay.size() > LOOSE_LIMIT) {
+                TreeMap<String, String> packed = parse(packed());
+                apply(packed, overlay);
+                _packedContents = format(packed);
+                journal.write(_packed, _packedContents);
+                overlay.clear();
+            }
+            journal.write(_loose, format(overlay));
+            _overlay = overlay;
+            _updates.clear();
+        }
+
+        /** Name --> new commit id, or null to delete. */
+        private TreeMap<String, String> _updates = new TreeMap<>(ORDER);
+    }
+
+    /**
+     * Returns the contents of loose-refs, reading it if
+     * needed. Deleted refs map to null.
+     * @return TreeMap
+     */
+    private TreeMap<String, String> overlay() {
+        if (_overlay == null) {
+            _overlay = parse(read(_loose));
+        }
+        return _overlay;
+    }
+
+    /**
+     * Returns the contents of packed-refs, reading it if
+     * needed. The file is read rather than mapped, so that
+     * it can later be replaced while this process runs.
+     * @return byte[]
+     */
+    private byte[] packed() {
+        if (_packedContents == null) {
+            _packedContents = read(_packed);
+        }
+        return _packedContents;
+    }
+
+    /**
+     * Finds ref NAME in packed-refs by binary search over
+     * its lines.
+     * @param name String
+     * @return String commit id, or null if absent
+     */
+    private String search(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.wrap(packed());
+        int lo = 0, hi = buf.limit();
+        while (lo < hi) {
+            int start = (lo + hi) >>> 1;
+            while (start > lo && buf.get(start - 1) != '\n') {
+                start -= 1;
+            }
+            int end = start;
+            while (buf.get(end) != '\n') {
+                end += 1;
+            }
+            int cmp = compare(buf, start + ID_WIDTH + 1, end, key);
+            if (cmp == 0) {
+                byte[] id = new byte[ID_WIDTH];
+                buf.position(start);
+                buf.get(id);
+                return new String(id, StandardCharsets.UTF_8);
+            } else if (cmp < 0) {
+                lo = end + 1;
+            } else {
+                hi = start;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares the bytes of BUF in [START, END) with KEY as
+     * unsigned byte strings.
+     * @param buf ByteBuffer
+     * @param start int
+     * @param end int
+     * @param key byte[]
+     * @return int
+     */
+    private static int compare(ByteBuffer buf, int start, int end,
+                               byte[] key) {
+        int n = Math.min(end - start, key.length);
+        for (int i = 0; i < n; i += 1) {
+            int cmp = Integer.compare(buf.get(start + i) & 0xff,
+                    key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(end - start, key.length);
+    }
+
+    /**
+     * Applies UPDATES (name --> id, or null to delete) to
+     * REFS.
+     * @param refs Map
+     * @param updates Map
+     */
+    private static void apply(Map<String, String> refs,
+                              Map<String, String> updates) {
+        for (Map.Entry<String, String> e : updates.entrySet()) {
+            if (e.getValue() == null) {
+                refs.remove(e.getKey());
+            } else {
+                refs.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the refs in CONTENTS, a ref file's contents.
+     * Deleted refs map to null.
+     * @param contents byte[]
+     * @return TreeMap
+     */
+    private static TreeMap<String, String> parse(byte[] contents) {
+        TreeMap<String, String> result = new TreeMap<>(ORDER);
+        String text = new String(contents, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            if (line.startsWith(DELETED)) {
+                result.put(line.substring(DELETED.length()), null);
+            } else if (line.length() > ID_WIDTH) {
+                result.put(line.substring(ID_WIDTH + 1),
+                        line.substring(0, ID_WIDTH));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns REFS in ref file format, in order.
+     * @param refs TreeMap
+     * @return byte[]
+     */
+    private static byte[] format(TreeMap<String, String> refs) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> e : refs.entrySet()) {
+            text.append(e.getValue() == null ? DELETED
+                    : e.getValue() + " ").append(e.getKey()).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the contents of FILE, or nothing if it is
+     * missing.
+     * @param file File
+     * @return byte[]
+     */
+    private static byte[] read(File file) {
+        return file.isFile() ? Utils.readContents(file) : new byte[0];
+    }
+
+    /** Width of a commit id in a ref line. */
+    private static final int ID_WIDTH = Utils.UID_LENGTH;
+
+    /** Start of the loose-refs line marking a deleted ref. */
+    private static final String DELETED = "- ";
+
+    /** The packed-refs file. */
+    private File _packed;
+
+    /** The loose-refs file. */
+    private File _loose;
+
+    /** Contents of packed-refs, once read. */
+    private byte[] _packedContents;
+
+    /** Contents of loose-refs, once read. */
+    private TreeMap<String, String> _overlay;
+}
@@ -0,0 +1,209 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pairs deleted paths with added paths whose contents are the
+ * same or similar. Each file is reduced to a set of hashed line
+ * fingerprints, and added files are indexed by fingerprint, so a
+ * deleted file is only compared with files that share some of its
+ * lines rather than with every added file. Each file is hashed
+ * and fingerprinted as soon as it is read, so only one file's
+ * contents are held at a time.
+ * @author Adish Jain
+ */
+class Renames {
+
+    /** Minimum similarity, in percent, for two files to pair up. */
+    static final int THRESHOLD = 50;
+
+    /**
+     * Fingerprints shared by more added files than this are too
+     * common (blank lines, braces) to say anything, and are not
+     * indexed. This bounds the work done for each deleted file.
+     */
+    static final int MAX_BUCKET = 64;
+
+    /**
+     * Constructor.
+     * @param source reads blob contents
+     */
+    Renames(Merge.Source source) {
+        _source = source;
+    }
+
+    /**
+     * Returns a map from each deleted path to the added path
+     * it was renamed to. DELETED and ADDED map paths to blob
+     * ids. Each path appears in at most one pair.
+     * @param deleted Map
+     * @param added Map
+     * @return Map old path --> new path
+     */
+    Map<String, String> detect(Map<String, String> deleted,
+                               Map<String, String> added) {
+        TreeMap<String, String> result = new TreeMap<>();
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return result;
+        }
+        String[] delPaths = sorted(deleted);
+        String[] addPaths = sorted(added);
+        boolean[] taken = new boolean[addPaths.length];
+
+        HashMap<String, Integer> exact = new HashMap<>();
+        long[][] addPrints = new long[addPaths.length][];
+        for (int i = 0; i < addPaths.length; i += 1) {
+            byte[] content = _source.content(added.get(addPaths[i]));
+            exact.putIfAbsent(Utils.sha1(content), i);
+            addPrints[i] = fingerprints(content);
+        }
+
+        long[][] delPrints = new long[delPaths.length][];
+        for (int i = 0; i < delPaths.length; i += 1) {
+            byte[] content = _source.content(deleted.get(delPaths[i]));
+            Integer same = exact.get(Utils.sha1(content));
+            if (same != null && !taken[same]) {
+                taken[same] = true;
+                result.put(delPaths[i], addPaths[same]);
+            } else {
+                delPrints[i] = fingerprints(content);
+            }
+        }
+
+        HashMap<Long, int[]> index = new HashMap<>();
+        for (int i = 0; i < addPaths.length; i += 1) {
+            if (!taken[i]) {
+                for (long print : addPrints[i]) {
+                    int[] bucket = index.get(print);
+                    if (bucket == null) {
+                        bucket = new int[] {0};
+                        index.put(print, bucket);
+                    }
+                    if (bucket[0] <= MAX_BUCKET) {
+                        if (bucket[0] + 1 == bucket.length) {
+                            bucket = Arrays.copyOf(bucket,
+                                    Math.min(2 * bucket.length,
+                                            MAX_BUCKET + 2));
+                            index.put(print, bucket);
+                        }
+                        bucket[0] += 1;
+                        bucket[bucket[0]] = i;
+                    }
+                }
+            }
+        }
+
+        List<long[]> candidates = new ArrayList<>();
+        int[] shared = new int[addPaths.length];
+        int[] touched = new int[addPaths.length];
+        for (int d = 0; d < delPaths.length; d += 1) {
+            if (delPrints[d] == null || delPrints[d].length == 0) {
+                continue;
+            }
+            int numTouched = 0;
+            for (long print : delPrints[d]) {
+                int[] bucket = index.get(print);
+                if (bucket == null || bucket[0] > MAX_BUCKET) {
+                    continue;
+                }
+                for (int b = 1; b <= bucket[0]; b += 1) {
+                    int a = bucket[b];
+                    if (shared[a] == 0) {
+                        touched[numTouched] = a;
+                        numTouched += 1;
+                    }
+                    shared[a] += 1;
+                }
+            }
+            for (int t = 0; t < numTouched; t += 1) {
+                int a = touched[t];
+                int size = Math.max(delPrints[d].length,
+                        addPrints[a].length);
+                long score = 100L * shared[a] / size;
+                if (score >= THRESHOLD) {
+                    candidates.add(new long[] {score, d, a});
+                }
+                shared[a] = 0;
+            }
+        }
+
+        Collections.sort(candidates, (x, y) -> x[0] != y[0]
+                ? Long.compare(y[0], x[0])
+                : x[1] != y[1] ? Long.compare(x[1], y[1])
+                : Long.compare(x[2], y[2]));
+        boolean[] paired = new boolean[delPaths.length];
+        for (long[] c : candidates) {
+            int d = (int) c[1], a = (int) c[2];
+            if (!paired[d] && !taken[a]) {
+                paired[d] = true;
+                taken[a] = true;
+                result.put(delPaths[d], addPaths[a]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sorted, distinct 64-bit FNV-1a hashes of the
+     * lines of CONTENT.
+     * @param content byte[]
+     * @return long[]
+     */
+    static long[] fingerprints(byte[] content) {
+        long[] prints = new long[16];
+        int count = 0;
+        long hash = FNV_OFFSET;
+        boolean inLine = false;
+        for (int i = 0; i <= content.length; i += 1) {
+            if (i == content.length || content[i] == '\n') {
+                if (inLine) {
+                    if (count == prints.length) {
+                        prints = Arrays.copyOf(prints, 2 * count);
+                    }
+                    prints[count] = hash;
+                    count += 1;
+                }
+                hash = FNV_OFFSET;
+                inLine = false;
+            } else {
+                hash = (hash ^ (content[i] & 0xff)) * FNV_PRIME;
+                inLine = true;
+            }
+        }
+        Arrays.sort(prints, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i += 1) {
+            if (distinct == 0 || prints[distinct - 1] != prints[i]) {
+                prints[distinct] = prints[i];
+                distinct += 1;
+            }
+        }
+        return Arrays.copyOf(prints, distinct);
+    }
+
+    /**
+     * Returns the keys of MAP, sorted.
+     * @param map Map
+     * @return String[]
+     */
+    private static String[] sorted(Map<String, String> map) {
+        String[] keys = map.keySet().toArray(new String[map.size()]);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /** FNV-1a 64-bit offset basis. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /** FNV-1a 64-bit prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Reads blob contents. */
+    private Merge.Source _source;
+}
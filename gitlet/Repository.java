@@ -0,0 +1,384 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The mutable state of a Gitlet repository: its branches, its
+ * HEAD, the staging area and the set of files staged for
+ * removal. HEAD is the file .gitlet/HEAD, a symbolic ref
+ * ("ref: BRANCH") naming the current branch; the head commit is
+ * the one that branch points to. The staging area is the file
+ * .gitlet/index, mapping each staged file to the id of its blob
+ * in .gitlet/blobs, so a staged blob is stored only once. Each
+ * part is read from disk the first time it is asked for, and the
+ * parts that were changed are written back together by write(),
+ * so a command reads and writes each of them at most once.
+ * @author Adish Jain
+ */
+class Repository {
+
+    /**
+     * Constructor.
+     * @param dir the .gitlet directory
+     */
+    Repository(File dir) {
+        _commits = Utils.join(dir, "commits");
+        _headCommit = Utils.join(_commits, "head");
+        _branches = Utils.join(dir, "branches");
+        _headBranch = Utils.join(_branches, "head");
+        _head = Utils.join(dir, "HEAD");
+        _stage = Utils.join(dir, "stage");
+        _index = Utils.join(dir, "index");
+        _blobs = Utils.join(dir, "blobs");
+        _unstage = Utils.join(dir, "unstage");
+        _branchTrack = Utils.join(dir, "branchTracker");
+        _refs = new RefStore(dir);
+        _refUpdates = _refs.transaction();
+        _journal = new Journal(dir);
+    }
+
+    /**
+     * Creates the files of an empty repository's state,
+     * with no branches and nothing staged.
+     */
+    void create() {
+        _refs.create(new HashMap<>());
+        _resolved.clear();
+        _removed = new HashSet<>();
+        _staged = new TreeMap<>();
+        _removedChanged = true;
+        _stagedChanged = true;
+    }
+
+    /**
+     * Returns the id of the commit branch NAME points to,
+     * or null if there is no such branch.
+     * @param name String
+     * @return String
+     */
+    String branch(String name) {
+        if (_refUpdates.changes(name)) {
+            return _refUpdates.get(name);
+        }
+        if (!_resolved.containsKey(name)) {
+            _resolved.put(name, _refs.get(name));
+        }
+        return _resolved.get(name);
+    }
+
+    /**
+     * Returns all branches, name --> id of the commit each
+     * points to, in name order.
+     * @return Map
+     */
+    Map<String, String> branches() {
+        TreeMap<String, String> result = _refs.all();
+        _refUpdates.applyTo(result);
+        return result;
+    }
+
+    /**
+     * Points branch NAME at commit COMMITID, creating the
+     * branch if needed.
+     * @param name String
+     * @param commitID String
+     */
+    void setBranch(String name, String commitID) {
+        _refUpdates.update(name, commitID);
+    }
+
+    /**
+     * Deletes branch NAME.
+     * @param name String
+     */
+    void removeBranch(String name) {
+        _refUpdates.delete(name);
+    }
+
+    /**
+     * Converts a repository made by an older version of
+     * Gitlet to the current layout: branches kept in one
+     * serialized map move to the ref store, and the head
+     * commit, which was kept apart in commits/head, joins the
+     * other commits, with HEAD naming the branch that was
+     * recorded in branches/head. Staged blobs, which were
+     * copied whole into the stage directory, move to the blob
+     * store and are listed in the index.
+     */
+    void upgrade() {
+        if (_stage.isDirectory()) {
+            upgradeStage();
+        }
+        if (!_refs.exists() && _branchTrack.isFile()) {
+            _refs.create(Utils.readObject(_branchTrack, HashMap.class));
+            _resolved.clear();
+            _branchTrack.delete();
+        }
+        if (!_head.isFile() && _headBranch.isDirectory()) {
+            for (File f : _headCommit.listFiles()) {
+                f.renameTo(Utils.join(_commits, f.getName()));
+            }
+            _headCommit.delete();
+            Branch current = Utils.readObject(
+                    _headBranch.listFiles()[0], Branch.class);
+            Utils.writeContents(_head, HEAD_REF + current.getName() + "\n");
+            for (File f : _headBranch.listFiles()) {
+                f.delete();
+            }
+            _headBranch.delete();
+            _branches.delete();
+        }
+    }
+
+    /**
+     * Replaces the stage directory of an old repository
+     * with the index. The directory is deleted only once
+     * the index is safely written, and is not read again if
+     * that deletion is interrupted.
+     */
+    private void upgradeStage() {
+        if (!_index.isFile()) {
+            TreeMap<String, String> staged = new TreeMap<>();
+            for (File f : _stage.listFiles()) {
+                Blob blob = Utils.readObject(f, Blob.class);
+                Utils.writeObjectIfAbsent(
+                        Utils.join(_blobs, blob.getID()), blob);
+                staged.put(blob.getName(), blob.getID());
+            }
+            Utils.syncPending();
+            Utils.writeObject(_index, staged);
+            Utils.syncPending();
+        }
+        for (File f : _stage.listFiles()) {
+            f.delete();
+        }
+        _stage.delete();
+    }
+
+    /**
+     * Returns the name of the current branch.
+     * @return String
+     */
+    String currentBranch() {
+        if (_branchName == null) {
+            _branchName = Utils.readContentsAsString(_head).trim()
+                    .substring(HEAD_REF.length());
+        }
+        return _branchName;
+    }
+
+    /**
+     * Returns the id of the head commit.
+     * @return String
+     */
+    String headID() {
+        return branch(currentBranch());
+    }
+
+    /**
+     * Makes BRANCH the current branch and points it at
+     * COMM, which becomes the head commit.
+     * @param branch String
+     * @param comm Commit
+     */
+    void setHead(String branch, Commit comm) {
+        if (!_head.isFile() || !branch.equals(currentBranch())) {
+            _branchName = branch;
+            _headChanged = true;
+        }
+        setBranch(branch, comm.getID());
+    }
+
+    /**
+     * Returns the staged files, name --> blob id, in name
+     * order. The map must not be modified.
+     * @return Map
+     */
+    Map<String, String> staged() {
+        if (_staged == null) {
+            _staged = Utils.readObject(_index, TreeMap.class);
+        }
+        return Collections.unmodifiableMap(_staged);
+    }
+
+    /**
+     * Stages blob BLOBID, which must be in the blob store,
+     * as file NAME, replacing any staged version of it.
+     * @param name String
+     * @param blobID String
+     */
+    void stage(String name, String blobID) {
+        staged();
+        _stagedChanged |= !blobID.equals(_staged.put(name, blobID));
+    }
+
+    /**
+     * Unstages file NAME, if it is staged.
+     * @param name String
+     */
+    void unstage(String name) {
+        staged();
+        _stagedChanged |= _staged.remove(name) != null;
+    }
+
+    /**
+     * Empties the staging area.
+     */
+    void clearStage() {
+        staged();
+        _stagedChanged |= !_staged.isEmpty();
+        _staged.clear();
+    }
+
+    /**
+     * Returns the names of files staged for removal. The
+     * set must not be modified.
+     * @return Set
+     */
+    Set<String> removed() {
+        if (_removed == null) {
+            _removed = Utils.readObject(_unstage, HashSet.class);
+        }
+        return Collections.unmodifiableSet(_removed);
+    }
+
+    /**
+     * Stages file NAME for removal if REMOVE, and otherwise
+     * takes it out of the files staged for removal.
+     * @param name String
+     * @param remove boolean
+     */
+    void markRemoved(String name, boolean remove) {
+        removed();
+        boolean changed = remove ? _removed.add(name)
+                : _removed.remove(name);
+        _removedChanged |= changed;
+    }
+
+    /**
+     * Empties the set of files staged for removal.
+     */
+    void clearRemoved() {
+        removed();
+        _removedChanged |= !_removed.isEmpty();
+        _removed.clear();
+    }
+
+    /**
+     * Returns true iff recover() or upgrade() has anything
+     * to write.
+     * @return boolean
+     */
+    boolean pending() {
+        return _journal.pending() || _stage.isDirectory()
+                || !_refs.exists() && _branchTrack.isFile()
+                || !_head.isFile() && _headBranch.isDirectory();
+    }
+
+    /**
+     * Finishes writing the state left by a command that
+     * died part way through write(), if any.
+     */
+    void recover() {
+        _journal.recover();
+    }
+
+    /**
+     * Writes every part of the state that was changed
+     * back to disk, all or nothing, through the journal.
+     * Everything written before, in this command, is made
+     * durable first, so that the branches and HEAD never
+     * refer to commits lost in a crash.
+     */
+    void write() {
+        if (_stagedChanged) {
+            _journal.write(_index, Utils.serialize(_staged));
+            _stagedChanged = false;
+        }
+        if (_removedChanged) {
+            _journal.write(_unstage, Utils.serialize(_removed));
+            _removedChanged = false;
+        }
+        _refUpdates.commit(_journal);
+        _resolved.clear();
+        if (_headChanged) {
+            _journal.write(_head, (HEAD_REF + _branchName + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            _headChanged = false;
+        }
+        _journal.commit();
+    }
+
+    /** Start of the contents of HEAD. */
+    private static final String HEAD_REF = "ref: ";
+
+    /** Directory of commits. */
+    private File _commits;
+
+    /** Directory that held the head commit in old repositories. */
+    private File _headCommit;
+
+    /** Directory of branch data in old repositories. */
+    private File _branches;
+
+    /** Directory that held the current branch in old repositories. */
+    private File _headBranch;
+
+    /** The HEAD file. */
+    private File _head;
+
+    /** Directory that held staged blobs in old repositories. */
+    private File _stage;
+
+    /** File holding the staging area. */
+    private File _index;
+
+    /** Directory of blobs. */
+    private File _blobs;
+
+    /** File holding the set of files staged for removal. */
+    private File _unstage;
+
+    /**
+     * File holding branch name --> commit id in
+     * repositories made before there was a ref store.
+     */
+    private File _branchTrack;
+
+    /** The branches. */
+    private RefStore _refs;
+
+    /** Branch updates not yet written. */
+    private RefStore.Transaction _refUpdates;
+
+    /** Branch name --> commit id (or null), as looked up so far. */
+    private HashMap<String, String> _resolved = new HashMap<>();
+
+    /** Collects the changes write() makes. */
+    private Journal _journal;
+
+    /** Name of the current branch, once read. */
+    private String _branchName;
+
+    /** Staged files, name --> blob id, once read. */
+    private TreeMap<String, String> _staged;
+
+    /** Files staged for removal, once read. */
+    private HashSet<String> _removed;
+
+    /** True iff the current branch changed. */
+    private boolean _headChanged;
+
+    /** True iff the staging area changed. */
+    private boolean _stagedChanged;
+
+    /** True iff the files staged for removal changed. */
+    private boolean _removedChanged;
+}
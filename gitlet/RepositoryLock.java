@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock on a whole repository, shared between processes, held on
+ * the file .gitlet/lock for the life of a command. Commands that
+ * only read the repository take it shared, so any number of them
+ * run together; commands that change it take it exclusive. A
+ * command that cannot get the lock retries, pausing a little
+ * longer each time, until a timeout runs out. The time spent
+ * waiting is recorded for reporting. The operating system drops
+ * the lock when the process exits, however it exits.
+ * @author Adish Jain
+ */
+class RepositoryLock {
+
+    /** Longest pause, in milliseconds, between attempts. */
+    static final long MAX_PAUSE = 50;
+
+    /**
+     * Constructor.
+     * @param dir the .gitlet directory
+     */
+    RepositoryLock(File dir) {
+        _file = Utils.join(dir, "lock");
+    }
+
+    /**
+     * Takes the lock, shared if SHARED and otherwise
+     * exclusive, waiting at most TIMEOUT milliseconds for
+     * other processes to release it. Returns true iff the
+     * lock was taken.
+     * @param shared boolean
+     * @param timeout long
+     * @return boolean
+     */
+    boolean acquire(boolean shared, long timeout) {
+        _shared = shared;
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long pause = 1;
+        try {
+            _channel = FileChannel.open(_file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            while (true) {
+                _attempts += 1;
+                try {
+                    _lock = _channel.tryLock(0, Long.MAX_VALUE, shared);
+                } catch (OverlappingFileLockException excp) {
+                    _lock = null;
+                }
+                long now = System.nanoTime();
+                if (_lock != null || now >= deadline) {
+                    _waited = now - start;
+                    break;
+                }
+                Thread.sleep(Math.min(pause,
+                        TimeUnit.NANOSECONDS.toMillis(deadline - now) + 1));
+                pause = Math.min(2 * pause, MAX_PAUSE);
+            }
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_lock == null) {
+            release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Releases the lock, if it is held.
+     */
+    void release() {
+        try {
+            if (_channel != null) {
+                _channel.close();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _channel = null;
+        _lock = null;
+    }
+
+    /**
+     * Returns a one-line summary of the last acquire().
+     * @return String
+     */
+    String stats() {
+        return String.format("repository lock: %s, waited %.3f ms, "
+                + "%d attempts", _shared ? "shared" : "exclusive",
+                _waited / 1e6, _attempts);
+    }
+
+    /** The lock file. */
+    private File _file;
+
+    /** Open channel on the lock file while the lock is held. */
+    private FileChannel _channel;
+
+    /** The lock, while held. */
+    private FileLock _lock;
+
+    /** True iff the lock was last asked for shared. */
+    private boolean _shared;
+
+    /** Nanoseconds spent waiting for the lock. */
+    private long _waited;
+
+    /** Number of attempts made to take the lock. */
+    private int _attempts;
+}
@@ -8,15 +8,26 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 /** Assorted utilities.
@@ -59,6 +70,33 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the 20-byte binary form of the hexadecimal SHA-1 UID
+     *  HEX. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) (Character.digit(hex.charAt(2 * i), 16) << 4
+                                | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
+    /** Returns the LEN bytes of BYTES starting at OFFSET as a
+     *  lower-case hexadecimal numeral. */
+    static String toHex(byte[] bytes, int offset, int len) {
+        char[] result = new char[2 * len];
+        for (int i = 0; i < len; i += 1) {
+            int b = bytes[offset + i] & 0xff;
+            result[2 * i] = HEX_DIGITS[b >>> 4];
+            result[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Hexadecimal digits, by value. */
+    private static final char[] HEX_DIGITS =
+        "0123456789abcdef".toCharArray();
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -109,29 +147,163 @@ class Utils {
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
-     *  either a String or a byte array.  Throws IllegalArgumentException
-     *  in case of problems. */
+     *  either a String or a byte array.  Files in the repository (under the
+     *  directory given to setDurability) are replaced atomically: the bytes
+     *  go to a temporary file in the same directory, which is then renamed
+     *  over FILE, so readers (and a crash) see either the old contents or
+     *  the new, never part of them.  Other files, such as those in the
+     *  working directory, are overwritten in place, keeping their
+     *  permissions.  Throws IllegalArgumentException in case of problems. */
     static void writeContents(File file, Object... contents) {
+        Path temp = null;
         try {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
-            BufferedOutputStream str =
-                new BufferedOutputStream(Files.newOutputStream(file.toPath()));
-            for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+            Path target = file.toPath().toAbsolutePath();
+            if (!inRepository(target)) {
+                try (OutputStream str = new BufferedOutputStream(
+                         Files.newOutputStream(target))) {
+                    write(str, contents);
                 }
+                return;
+            }
+            temp = createTemporary(target);
+            try (FileChannel channel = FileChannel.open(temp,
+                     StandardOpenOption.WRITE)) {
+                OutputStream str = new BufferedOutputStream(
+                    Channels.newOutputStream(channel));
+                write(str, contents);
+                str.flush();
+                if (_sync == Sync.ALWAYS) {
+                    channel.force(true);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+            if (_sync == Sync.ALWAYS) {
+                force(target.getParent());
+            } else if (_sync == Sync.BATCH) {
+                UNSYNCED.add(target);
+                UNSYNCED.add(target.getParent());
             }
-            str.close();
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+    }
+
+    /** Write the bytes of each of CONTENTS, a String or a byte array, to
+     *  STR. */
+    private static void write(OutputStream str, Object[] contents)
+        throws IOException {
+        for (Object obj : contents) {
+            if (obj instanceof byte[]) {
+                str.write((byte[]) obj);
+            } else {
+                str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /** Create and return a new, empty temporary file in the directory of
+     *  TARGET, with the permissions a new file gets by default, so that
+     *  renaming it over TARGET leaves TARGET as readable as if it had been
+     *  written in place. */
+    private static Path createTemporary(Path target) throws IOException {
+        while (true) {
+            Path temp = target.resolveSibling("." + target.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong())
+                + TEMP_SUFFIX);
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException excp) {
+                /* Try another name. */
+            }
         }
     }
 
+    /** Returns true iff PATH is in the repository. */
+    private static boolean inRepository(Path path) {
+        return _durableRoot != null
+            && path.toAbsolutePath().normalize().startsWith(_durableRoot);
+    }
+
+    /** Returns true iff NAME is the name of a temporary file made by
+     *  writeContents, which may be left behind by a crash. */
+    static boolean isTemporary(String name) {
+        return name.startsWith(".") && name.endsWith(TEMP_SUFFIX);
+    }
+
+    /* DURABILITY */
+
+    /** When files are forced to stable storage. */
+    enum Sync {
+        /** Never; the operating system writes files back when it likes. */
+        OFF,
+        /** In batches, when syncPending is called. */
+        BATCH,
+        /** Before writeContents returns. */
+        ALWAYS
+    }
+
+    /** Treat ROOT as the repository from now on: files written under it
+     *  are replaced atomically and made durable according to MODE.  Files
+     *  outside ROOT are written in place and never forced. */
+    static void setDurability(File root, Sync mode) {
+        _durableRoot = root.toPath().toAbsolutePath().normalize();
+        _sync = mode;
+    }
+
+    /** Force every file written in BATCH mode since the last call, and the
+     *  directories holding them, to stable storage, all at once.  Callers
+     *  do this before writing a file that refers to those files, so that
+     *  after a crash nothing refers to a file that was lost. */
+    static void syncPending() {
+        if (UNSYNCED.isEmpty()) {
+            return;
+        }
+        List<Path> batch = new ArrayList<>(UNSYNCED);
+        UNSYNCED.removeAll(batch);
+        batch.parallelStream().forEach(path -> {
+            try {
+                force(path);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        });
+    }
+
+    /** Force the file or directory PATH to stable storage.  Directories
+     *  cannot be opened on some systems; they are then skipped. */
+    private static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                 StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!Files.isDirectory(path)) {
+                throw excp;
+            }
+        }
+    }
+
+    /** Suffix of the names of temporary files made by writeContents. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** The repository: files under it are replaced atomically and made
+     *  durable. */
+    private static Path _durableRoot;
+
+    /** When files under _durableRoot are forced to stable storage. */
+    private static Sync _sync = Sync.OFF;
+
+    /** Files and directories written in BATCH mode and not yet forced. */
+    private static final Set<Path> UNSYNCED = ConcurrentHashMap.newKeySet();
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -153,14 +325,30 @@ class Utils {
         writeContents(file, serialize(obj));
     }
 
+    /** Write OBJ to FILE, which is named by OBJ's content id, unless
+     *  FILE already exists, and return true iff it was written.  All
+     *  objects with the same id have the same bytes, so writers need
+     *  no lock: each writes its own temporary file and renames it into
+     *  place, and the last rename leaves the same contents as the
+     *  first. */
+    static boolean writeObjectIfAbsent(File file, Serializable obj) {
+        if (file.isFile()) {
+            return false;
+        }
+        writeObject(file, obj);
+        return true;
+    }
+
     /* DIRECTORIES */
 
-    /** Filter out all but plain files. */
+    /** Filter out all but plain files, and temporary files left in the
+     *  repository. */
     private static final FilenameFilter PLAIN_FILES =
         new FilenameFilter() {
             @Override
             public boolean accept(File dir, String name) {
-                return new File(dir, name).isFile();
+                return new File(dir, name).isFile()
+                    && !(isTemporary(name) && inRepository(dir.toPath()));
             }
         };
 